@@ -0,0 +1,137 @@
+package ch.fortidemo.grpcvideobench;
+
+import ch.fortidemo.grpc.video.VideoChunk;
+import ch.fortidemo.grpc.video.VideoServiceGrpc;
+import ch.fortidemo.grpcvideoserver.VideoAsset;
+import com.google.protobuf.ByteString;
+import io.grpc.Drainable;
+import io.grpc.MethodDescriptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Produces every chunk of one file the way the server does, one op = one pass over the file.
+// legacyCopy is the original FileInputStream + ByteString.copyFrom loop, positionedRead and mappedSlices
+// are the two VideoAsset read paths (video.mapped-io=false / true). With marshal=true each chunk is also
+// drained through the gRPC response marshaller, which is what the transport does before framing it.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkEncodingBenchmark {
+    private static final int FILE_SIZE = 32 * 1024 * 1024;
+    private static final MethodDescriptor.Marshaller<VideoChunk> MARSHALLER =
+            VideoServiceGrpc.getStreamVideoMethod().getResponseMarshaller();
+
+    @Param({"4096", "16384", "65536", "262144", "1048576"})
+    public int chunkSize;
+
+    @Param({"false", "true"})
+    public boolean marshal;
+
+    private Path file;
+    private VideoAsset asset;
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.createTempFile("chunk-encoding", ".mp4");
+        byte[] content = new byte[FILE_SIZE];
+        new Random(42).nextBytes(content);
+        Files.write(file, content);
+        asset = VideoAsset.open(file, FILE_SIZE, Files.getLastModifiedTime(file).toMillis());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        asset.release();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void legacyCopy(Transferred transferred, Blackhole blackhole) throws IOException {
+        try (FileInputStream in = new FileInputStream(file.toFile())) {
+            byte[] buffer = new byte[chunkSize];
+            int bytesRead;
+            long chunkIndex = 0;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                consume(VideoChunk.newBuilder()
+                        .setData(ByteString.copyFrom(buffer, 0, bytesRead))
+                        .setChunkIndex(chunkIndex++)
+                        .build(), blackhole);
+            }
+        }
+        transferred.add(FILE_SIZE);
+    }
+
+    @Benchmark
+    public void positionedRead(Transferred transferred, Blackhole blackhole) throws IOException {
+        readChunks(false, blackhole);
+        transferred.add(FILE_SIZE);
+    }
+
+    @Benchmark
+    public void mappedSlices(Transferred transferred, Blackhole blackhole) throws IOException {
+        readChunks(true, blackhole);
+        transferred.add(FILE_SIZE);
+    }
+
+    private void readChunks(boolean mappedIo, Blackhole blackhole) throws IOException {
+        for (long offset = 0; offset < FILE_SIZE; offset += chunkSize) {
+            int length = (int) Math.min(chunkSize, FILE_SIZE - offset);
+            consume(VideoChunk.newBuilder()
+                    .setData(asset.read(offset, length, mappedIo))
+                    .setOffset(offset)
+                    .setChunkIndex(offset / chunkSize)
+                    .build(), blackhole);
+        }
+    }
+
+    private void consume(VideoChunk chunk, Blackhole blackhole) throws IOException {
+        if (marshal) {
+            try (InputStream stream = MARSHALLER.stream(chunk)) {
+                ((Drainable) stream).drainTo(new BlackholeOutputStream(blackhole));
+            }
+        } else {
+            blackhole.consume(chunk);
+        }
+    }
+
+    private static final class BlackholeOutputStream extends OutputStream {
+        private final Blackhole blackhole;
+
+        BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package ch.fortidemo.grpcvideobench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Counters for the compression benchmark: MB/s of input compressed, and MB/s of it saved on the wire
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Compressed {
+    public double megabytes;
+    public double savedMegabytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        megabytes = 0;
+        savedMegabytes = 0;
+    }
+
+    public void add(long inputBytes, long outputBytes) {
+        megabytes += inputBytes / (1024.0 * 1024.0);
+        savedMegabytes += (inputBytes - outputBytes) / (1024.0 * 1024.0);
+    }
+}
@@ -0,0 +1,148 @@
+package ch.fortidemo.grpcvideobench;
+
+import ch.fortidemo.grpc.video.VideoChunk;
+import ch.fortidemo.grpc.video.VideoRequest;
+import ch.fortidemo.grpc.video.VideoServiceGrpc;
+import ch.fortidemo.grpcvideoserver.BandwidthShaper;
+import ch.fortidemo.grpcvideoserver.GrpcServerProperties;
+import ch.fortidemo.grpcvideoserver.NettyServerFactory;
+import ch.fortidemo.grpcvideoserver.ResponseCompression;
+import ch.fortidemo.grpcvideoserver.SegmentCache;
+import ch.fortidemo.grpcvideoserver.StreamMetrics;
+import ch.fortidemo.grpcvideoserver.VideoCatalog;
+import ch.fortidemo.grpcvideoserver.VideoConfig;
+import ch.fortidemo.grpcvideoserver.VideoServiceImpl;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.util.FileSystemUtils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Load test for grpc.server.executor: starts a real Netty server on loopback once per executor mode, opens
+// N concurrent streams over one connection and reports the peak number of live platform threads and the
+// first-chunk latency percentiles. The file is read without mapping or caching, so every chunk is a blocking
+// read on the executor. The client runs its callbacks directly on its event loop so it adds no threads.
+//
+//   java -cp target/benchmarks.jar ch.fortidemo.grpcvideobench.ExecutorLoadTest [streams] [file-size-kb]
+public class ExecutorLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int streams = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int fileSize = (args.length > 1 ? Integer.parseInt(args[1]) : 1024) * 1024;
+
+        Path videoDir = Files.createTempDirectory("executor-load");
+        byte[] content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+        Files.write(videoDir.resolve("video.mp4"), content);
+
+        // The server logs every stream, so the table is printed once all runs are done
+        StringBuilder results = new StringBuilder(String.format("%-8s %8s %14s %12s %12s %12s %10s%n",
+                "executor", "streams", "peak threads", "p50 ms", "p99 ms", "max ms", "MB/s"));
+        try {
+            for (GrpcServerProperties.Executor mode : GrpcServerProperties.Executor.values()) {
+                results.append(run(mode, streams, fileSize, videoDir));
+            }
+            System.out.println();
+            System.out.print(results);
+        } finally {
+            FileSystemUtils.deleteRecursively(videoDir);
+        }
+    }
+
+    private static String run(GrpcServerProperties.Executor mode, int streams, int fileSize, Path videoDir) throws Exception {
+        VideoConfig config = new VideoConfig();
+        config.setMappedIo(false);
+        VideoCatalog catalog = new VideoCatalog(videoDir.toString());
+        catalog.start();
+        VideoServiceImpl service = new VideoServiceImpl("video.mp4", config, new SegmentCache(0), catalog,
+                new StreamMetrics(false, false, 1000), new ResponseCompression(config),
+                new BandwidthShaper(config, new SimpleMeterRegistry()));
+
+        // Same transport setup as GrpcServer, on an ephemeral port
+        GrpcServerProperties properties = new GrpcServerProperties();
+        properties.setPort(0);
+        properties.setExecutor(mode);
+        NettyServerFactory serverFactory = new NettyServerFactory(properties, new SimpleMeterRegistry());
+        Server server = serverFactory.newServerBuilder().addService(service).build().start();
+        ManagedChannel channel = NettyChannelBuilder.forAddress("127.0.0.1", server.getPort())
+                .usePlaintext()
+                .directExecutor()
+                .build();
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        AtomicInteger peakThreads = new AtomicInteger(threads.getThreadCount());
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> peakThreads.accumulateAndGet(threads.getThreadCount(), Math::max),
+                0, 5, TimeUnit.MILLISECONDS);
+
+        try {
+            VideoServiceGrpc.VideoServiceStub stub = VideoServiceGrpc.newStub(channel);
+            long[] firstChunkNanos = new long[streams];
+            AtomicLong received = new AtomicLong();
+            AtomicInteger failures = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(streams);
+            VideoRequest request = VideoRequest.newBuilder().setFilename("video.mp4").build();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < streams; i++) {
+                int stream = i;
+                long requested = System.nanoTime();
+                stub.streamVideo(request, new StreamObserver<>() {
+                    @Override
+                    public void onNext(VideoChunk chunk) {
+                        if (firstChunkNanos[stream] == 0) {
+                            firstChunkNanos[stream] = System.nanoTime() - requested;
+                        }
+                        received.addAndGet(chunk.getData().size());
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        failures.incrementAndGet();
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            long[] sorted = firstChunkNanos.clone();
+            Arrays.sort(sorted);
+            return String.format("%-8s %8d %14d %12.1f %12.1f %12.1f %10.1f%s%n",
+                    mode.name().toLowerCase(), streams, peakThreads.get(),
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), sorted[sorted.length - 1] / 1e6,
+                    received.get() / (1024.0 * 1024.0) / seconds,
+                    failures.get() > 0 ? "  (" + failures.get() + " failed)" : "");
+        } finally {
+            sampler.shutdownNow();
+            channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+            server.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+            serverFactory.shutdown();
+            catalog.stop();
+        }
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,147 @@
+package ch.fortidemo.grpcvideobench;
+
+import ch.fortidemo.grpc.video.VideoChunk;
+import ch.fortidemo.grpc.video.VideoRequest;
+import ch.fortidemo.grpc.video.VideoServiceGrpc;
+import ch.fortidemo.grpcvideoserver.BandwidthShaper;
+import ch.fortidemo.grpcvideoserver.ResponseCompression;
+import ch.fortidemo.grpcvideoserver.SegmentCache;
+import ch.fortidemo.grpcvideoserver.StreamMetrics;
+import ch.fortidemo.grpcvideoserver.VideoCatalog;
+import ch.fortidemo.grpcvideoserver.VideoConfig;
+import ch.fortidemo.grpcvideoserver.VideoServiceImpl;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32C;
+
+// End-to-end streamVideo through the real VideoServiceImpl over the in-process transport, one op = all
+// streams have received the whole file. In-process calls hand messages over by reference, so this measures
+// the server loop, the segment cache and flow control without network or serialization cost.
+// With checksums the server CRC32Cs every chunk and the streams check them on arrival, as ResumableDownload
+// does; the file's SHA-256 is cached after the first warmup stream, so this is the steady-state cost.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamingThroughputBenchmark {
+    private static final int FILE_SIZE = 4 * 1024 * 1024;
+
+    @Param({"1", "16", "256"})
+    public int streams;
+
+    @Param({"true", "false"})
+    public boolean mappedIo;
+
+    @Param({"false", "true"})
+    public boolean checksums;
+
+    private Path videoDir;
+    private VideoCatalog catalog;
+    private Server server;
+    private ManagedChannel channel;
+    private VideoServiceGrpc.VideoServiceStub stub;
+
+    @Setup
+    public void setup() throws IOException {
+        videoDir = Files.createTempDirectory("streaming-throughput");
+        byte[] content = new byte[FILE_SIZE];
+        new Random(42).nextBytes(content);
+        Files.write(videoDir.resolve("video.mp4"), content);
+
+        VideoConfig config = new VideoConfig();
+        config.setMappedIo(mappedIo);
+        catalog = new VideoCatalog(videoDir.toString());
+        catalog.start();
+        VideoServiceImpl service = new VideoServiceImpl("video.mp4", config, new SegmentCache(config), catalog,
+                new StreamMetrics(config), new ResponseCompression(config),
+                new BandwidthShaper(config, new SimpleMeterRegistry()));
+
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).addService(service).build().start();
+        channel = InProcessChannelBuilder.forName(name).build();
+        stub = VideoServiceGrpc.newStub(channel);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        channel.shutdownNow();
+        server.shutdownNow();
+        catalog.stop();
+        FileSystemUtils.deleteRecursively(videoDir);
+    }
+
+    @Benchmark
+    public long streamFile(Transferred transferred) throws Exception {
+        CountDownLatch done = new CountDownLatch(streams);
+        AtomicLong received = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        VideoRequest request = VideoRequest.newBuilder().setFilename("video.mp4").setChecksums(checksums).build();
+
+        for (int i = 0; i < streams; i++) {
+            stub.streamVideo(request, new StreamObserver<>() {
+                private final CRC32C crc = new CRC32C();
+
+                @Override
+                public void onNext(VideoChunk chunk) {
+                    if (checksums) {
+                        crc.reset();
+                        for (ByteBuffer piece : chunk.getData().asReadOnlyByteBufferList()) {
+                            crc.update(piece);
+                        }
+                        if ((int) crc.getValue() != chunk.getCrc32C()) {
+                            failure.set(new IllegalStateException("CRC32C mismatch at byte " + chunk.getOffset()));
+                        }
+                    }
+                    received.addAndGet(chunk.getData().size());
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    failure.set(t);
+                    done.countDown();
+                }
+
+                @Override
+                public void onCompleted() {
+                    done.countDown();
+                }
+            });
+        }
+
+        done.await();
+        if (failure.get() != null) {
+            throw new IllegalStateException("Stream failed", failure.get());
+        }
+        transferred.add(received.get());
+        return received.get();
+    }
+}
@@ -0,0 +1,157 @@
+package ch.fortidemo.grpcvideobench;
+
+import ch.fortidemo.grpcvideoserver.TlsContextFactory;
+import ch.fortidemo.grpcvideoserver.TlsProperties;
+import io.grpc.netty.shaded.io.grpc.netty.GrpcSslContexts;
+import io.grpc.netty.shaded.io.netty.buffer.ByteBufAllocator;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslContext;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslContextBuilder;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslProvider;
+import io.grpc.netty.shaded.io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.grpc.netty.shaded.io.netty.handler.ssl.util.SelfSignedCertificate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Server TLS cost per core for the two grpc.server.tls.provider choices, with the SslContext built by the
+// server's TlsContextFactory. Everything runs on one thread over in-memory SSLEngine pairs, so there is no
+// socket or scheduling noise. bulk encrypts 16 KB records on the server and decrypts them on the client (the
+// server's share is the encrypt half); fullHandshake and resumedHandshake run a complete TLS 1.3 handshake
+// per op, including the client side. The client is always the JDK provider, which caches sessions per host.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TlsBenchmark {
+    private static final int RECORD_SIZE = 16 * 1024; // largest TLS record
+
+    @Param({"JDK", "OPENSSL"})
+    public TlsProperties.Provider provider;
+
+    private SelfSignedCertificate certificate;
+    private SslContext serverContext;
+    private SslContext clientContext;
+    private SSLEngine bulkServer;
+    private SSLEngine bulkClient;
+    private final ByteBuffer plaintext = ByteBuffer.allocateDirect(RECORD_SIZE);
+    private final ByteBuffer network = ByteBuffer.allocateDirect(64 * 1024);
+    private final ByteBuffer decrypted = ByteBuffer.allocateDirect(64 * 1024);
+
+    @Setup
+    public void setup() throws Exception {
+        certificate = new SelfSignedCertificate("localhost");
+        TlsProperties properties = new TlsProperties();
+        properties.setProvider(provider);
+        try (InputStream cert = new FileInputStream(certificate.certificate());
+             InputStream key = new FileInputStream(certificate.privateKey())) {
+            serverContext = new TlsContextFactory(properties).build(cert, key, null);
+        }
+        clientContext = GrpcSslContexts.configure(SslContextBuilder.forClient(), SslProvider.JDK)
+                .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                .build();
+
+        byte[] content = new byte[RECORD_SIZE];
+        new Random(42).nextBytes(content);
+        plaintext.put(content).flip();
+        bulkServer = serverContext.newEngine(ByteBufAllocator.DEFAULT);
+        bulkClient = clientContext.newEngine(ByteBufAllocator.DEFAULT);
+        handshake(bulkClient, bulkServer);
+        // The numbers are only comparable between providers if both negotiate TLS 1.3
+        if (!bulkClient.getSession().getProtocol().equals("TLSv1.3")) {
+            throw new IllegalStateException("Negotiated " + bulkClient.getSession().getProtocol() + " instead of TLSv1.3");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        certificate.delete();
+    }
+
+    @Benchmark
+    public void bulk(Transferred transferred) throws SSLException {
+        plaintext.rewind();
+        network.clear();
+        bulkServer.wrap(plaintext, network);
+        network.flip();
+        decrypted.clear();
+        bulkClient.unwrap(network, decrypted);
+        transferred.add(RECORD_SIZE);
+    }
+
+    @Benchmark
+    public void fullHandshake() throws SSLException {
+        // No peer host and port, so the client has no session to offer
+        handshake(clientContext.newEngine(ByteBufAllocator.DEFAULT), serverContext.newEngine(ByteBufAllocator.DEFAULT));
+    }
+
+    @Benchmark
+    public void resumedHandshake() throws SSLException {
+        handshake(clientContext.newEngine(ByteBufAllocator.DEFAULT, "localhost", 9090),
+                serverContext.newEngine(ByteBufAllocator.DEFAULT));
+    }
+
+    // Shuttles records between the engines until the handshake is done, then sends one record each way:
+    // BoringSSL only flushes the TLS 1.3 session tickets together with the first application data
+    private static void handshake(SSLEngine client, SSLEngine server) throws SSLException {
+        ByteBuffer toServer = ByteBuffer.allocate(64 * 1024);
+        ByteBuffer toClient = ByteBuffer.allocate(64 * 1024);
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        ByteBuffer application = ByteBuffer.allocate(64 * 1024);
+        client.beginHandshake();
+        server.beginHandshake();
+
+        for (int i = 0; i < 100; i++) {
+            client.wrap(empty, toServer);
+            server.wrap(empty, toClient);
+            toServer.flip();
+            server.unwrap(toServer, application);
+            toServer.compact();
+            toClient.flip();
+            client.unwrap(toClient, application);
+            toClient.compact();
+            runTasks(client);
+            runTasks(server);
+            if (client.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING
+                    && server.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING
+                    && toServer.position() == 0 && toClient.position() == 0) {
+                server.wrap(ByteBuffer.wrap(new byte[16]), toClient);
+                toClient.flip();
+                while (toClient.hasRemaining() && client.unwrap(toClient, application).bytesConsumed() > 0) {
+                    application.clear();
+                }
+                client.wrap(ByteBuffer.wrap(new byte[16]), toServer);
+                toServer.flip();
+                server.unwrap(toServer, application);
+                return;
+            }
+        }
+        throw new IllegalStateException("Handshake did not finish");
+    }
+
+    private static void runTasks(SSLEngine engine) {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+}
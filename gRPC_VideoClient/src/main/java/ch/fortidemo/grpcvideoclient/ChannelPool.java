@@ -0,0 +1,91 @@
+package ch.fortidemo.grpcvideoclient;
+
+import ch.fortidemo.grpc.video.VideoServiceGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Channels shared by every playback session in the process, so the next video reuses connections that are
+// through the TCP and TLS handshakes and past HTTP/2 slow start instead of building and tearing down its own.
+// A server gets -Dvideo.channels connections (default 2), created on first use and handed out round-robin,
+// so concurrent streams such as the ranges of a ParallelDownload spread over them. Keepalive pings keep
+// idle connections open through NATs and load balancers and detect dead ones; a channel without calls for
+// the idle timeout drops its connection and reconnects on the next call. Callers must not shut pooled
+// channels down, shutdown() does that once at exit.
+public final class ChannelPool {
+	private static final Logger LOGGER = Logger.getLogger(ChannelPool.class.getName());
+	private static final int SIZE = Integer.getInteger("video.channels", 2);
+	private static final long KEEPALIVE_SECONDS = Long.getLong("video.keepalive.seconds", 30);
+	private static final long IDLE_TIMEOUT_SECONDS = Long.getLong("video.idle.timeout.seconds", 300);
+	private static final Map<String, ChannelPool> POOLS = new ConcurrentHashMap<>();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(ChannelPool::shutdownAll, "channel-pool-shutdown"));
+	}
+
+	private final String target;
+	private final ManagedChannel[] channels;
+	private final AtomicInteger next = new AtomicInteger();
+
+	private ChannelPool(String target, int size, Supplier<ManagedChannelBuilder<?>> builder) {
+		this.target = target;
+		this.channels = new ManagedChannel[size];
+		for (int i = 0; i < size; i++) {
+			channels[i] = builder.get()
+					.keepAliveTime(KEEPALIVE_SECONDS, TimeUnit.SECONDS)
+					.keepAliveWithoutCalls(true)
+					.idleTimeout(IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+					.build();
+		}
+		LOGGER.info(String.format("🔌 Channel pool for %s: %d connections, keepalive %d s, idle timeout %d s",
+				target, size, KEEPALIVE_SECONDS, IDLE_TIMEOUT_SECONDS));
+	}
+
+	// The pool for a server, building its channels with builder the first time. target identifies the server
+	// and the security settings, e.g. "tls://host:port", as a different builder needs a different pool.
+	public static ChannelPool forTarget(String target, Supplier<ManagedChannelBuilder<?>> builder) {
+		return POOLS.computeIfAbsent(target, t -> new ChannelPool(t, Math.max(1, SIZE), builder));
+	}
+
+	public ManagedChannel next() {
+		return channels[Math.floorMod(next.getAndIncrement(), channels.length)];
+	}
+
+	public VideoServiceGrpc.VideoServiceStub newStub() {
+		return VideoServiceGrpc.newStub(next());
+	}
+
+	public int size() {
+		return channels.length;
+	}
+
+	public static void shutdownAll() {
+		for (ChannelPool pool : POOLS.values()) {
+			pool.shutdown();
+		}
+		POOLS.clear();
+	}
+
+	private void shutdown() {
+		for (ManagedChannel channel : channels) {
+			channel.shutdown();
+		}
+		try {
+			for (ManagedChannel channel : channels) {
+				if (!channel.awaitTermination(5, TimeUnit.SECONDS)) {
+					channel.shutdownNow();
+				}
+			}
+		} catch (InterruptedException e) {
+			LOGGER.log(Level.WARNING, "Interrupted while closing the channels to " + target, e);
+			Thread.currentThread().interrupt();
+		}
+	}
+}
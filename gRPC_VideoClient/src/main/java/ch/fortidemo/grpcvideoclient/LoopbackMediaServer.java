@@ -0,0 +1,116 @@
+package ch.fortidemo.grpcvideoclient;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Serves a MemoryWindow to the JavaFX media player over HTTP on the loopback interface, as Media only plays
+// files and http(s) URLs. The player asks for byte ranges to find the index and to seek, so a Range request
+// gets a 206 with just those bytes, streamed out of the window while they arrive.
+public class LoopbackMediaServer {
+	private static final Logger LOGGER = Logger.getLogger(LoopbackMediaServer.class.getName());
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final MemoryWindow window;
+	private final String path;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	public LoopbackMediaServer(MemoryWindow window, String filename) {
+		this.window = window;
+		this.path = "/" + filename;
+	}
+
+	// Binds an ephemeral port and returns the URL to hand to Media
+	public String start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		// Every player connection may wait on the download, so each gets its own thread
+		executor = Executors.newVirtualThreadPerTaskExecutor();
+		server.setExecutor(executor);
+		server.createContext(path, this::serve);
+		server.start();
+		InetSocketAddress address = server.getAddress();
+		return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + path;
+	}
+
+	public void stop() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+		}
+	}
+
+	private void serve(HttpExchange exchange) {
+		try (exchange) {
+			String method = exchange.getRequestMethod();
+			if (!method.equals("GET") && !method.equals("HEAD")) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			long totalSize = window.awaitTotalSize();
+			long first = 0;
+			long last = totalSize - 1;
+			int status = 200;
+			Headers headers = exchange.getResponseHeaders();
+			headers.set("Content-Type", "video/mp4");
+			headers.set("Accept-Ranges", "bytes");
+
+			String range = exchange.getRequestHeaders().getFirst("Range");
+			if (range != null) {
+				Matcher matcher = RANGE.matcher(range.trim());
+				boolean valid = matcher.matches() && !(matcher.group(1).isEmpty() && matcher.group(2).isEmpty());
+				if (valid && matcher.group(1).isEmpty()) {
+					// bytes=-n asks for the last n bytes
+					first = Math.max(0, totalSize - Long.parseLong(matcher.group(2)));
+				} else if (valid) {
+					first = Long.parseLong(matcher.group(1));
+					if (!matcher.group(2).isEmpty()) {
+						last = Math.min(last, Long.parseLong(matcher.group(2)));
+					}
+				}
+				if (!valid || first > last) {
+					headers.set("Content-Range", "bytes */" + totalSize);
+					exchange.sendResponseHeaders(416, -1);
+					return;
+				}
+				status = 206;
+				headers.set("Content-Range", "bytes " + first + "-" + last + "/" + totalSize);
+			}
+
+			long length = last - first + 1;
+			if (method.equals("HEAD") || length == 0) {
+				headers.set("Content-Length", Long.toString(length));
+				exchange.sendResponseHeaders(status, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(status, length);
+			OutputStream body = exchange.getResponseBody();
+			byte[] buffer = new byte[BUFFER_SIZE];
+			for (long position = first; position <= last; ) {
+				int read = window.read(position, buffer, 0, (int) Math.min(buffer.length, last + 1 - position));
+				if (read < 0) {
+					throw new IOException("Video ended at byte " + position + " of " + totalSize);
+				}
+				body.write(buffer, 0, read);
+				// Hand over what we have, the next read may wait for the network
+				body.flush();
+				position += read;
+			}
+		} catch (IOException e) {
+			// Mostly the player closing a connection it no longer needs, e.g. after a seek
+			LOGGER.log(Level.FINE, "Media request for " + path + " ended early", e);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package ch.fortidemo.grpcvideoclient;
+
+// How far a file has arrived without gaps, when one range of it may come ahead of its turn: the moov box the
+// server sends before the media data of an MP4 that is not fast-start. That range counts once the bytes before
+// it are in; anything else beyond the gap does not count, so a resumed download fetches it again.
+final class ReceivedPrefix {
+	private long end;
+	private long aheadStart = -1;
+	private long aheadEnd = -1;
+
+	ReceivedPrefix(long end) {
+		this.end = end;
+	}
+
+	// With the range [aheadStart, aheadEnd) already in, e.g. the moov a previous run got before it stopped
+	ReceivedPrefix(long end, long aheadStart, long aheadEnd) {
+		this.end = end;
+		add(aheadStart, aheadEnd - aheadStart);
+	}
+
+	// Every byte before the returned position has arrived
+	long add(long position, long length) {
+		if (position > end) {
+			if (aheadStart < 0) {
+				aheadStart = position;
+				aheadEnd = position + length;
+			} else if (position >= aheadStart && position <= aheadEnd) {
+				aheadEnd = Math.max(aheadEnd, position + length);
+			}
+			return end;
+		}
+		end = Math.max(end, position + length);
+		if (aheadStart >= 0 && aheadStart <= end) {
+			end = Math.max(end, aheadEnd);
+			aheadStart = -1;
+			aheadEnd = -1;
+		}
+		return end;
+	}
+
+	long get() {
+		return end;
+	}
+
+	// Start of the range that arrived ahead of the gap, -1 if there is none
+	long getAheadStart() {
+		return aheadStart;
+	}
+
+	long getAheadEnd() {
+		return aheadEnd;
+	}
+
+	// Starts over at end, e.g. when the server sends another version of the file
+	void reset(long end) {
+		this.end = end;
+		aheadStart = -1;
+		aheadEnd = -1;
+	}
+}
@@ -1,8 +1,8 @@
 package ch.fortidemo.grpcvideoclient;
 
-import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
-import io.grpc.stub.StreamObserver;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.scene.Scene;
@@ -15,11 +15,15 @@ import ch.fortidemo.grpc.video.VideoServiceGrpc;
 import ch.fortidemo.grpc.video.VideoRequest;
 import ch.fortidemo.grpc.video.VideoChunk;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class VideoClient extends Application {
-    private static PipedInputStream pipedInputStream;
-    private static PipedOutputStream pipedOutputStream;
-    private static ManagedChannel channel;
+    // Chunks in flight between gRPC and the file writer; memory stays at slots x the largest chunk
+    private static final int RING_SLOTS = Integer.getInteger("video.ring.slots", 16);
+    private static final int RING_BUFFER_SIZE = 256 * 1024;
     private static File streamingFile;
 
     // Default values
@@ -85,43 +89,28 @@ public class VideoClient extends Application {
     private void startGrpcClient() throws Exception {
         System.out.println("\n📡 [DEBUG] Connecting to gRPC server at " + serverAddress + ":" + serverPort);
 
-        channel = ManagedChannelBuilder.forAddress(serverAddress, serverPort)
-                .usePlaintext()
-                .build();
-
-        VideoServiceGrpc.VideoServiceStub stub = VideoServiceGrpc.newStub(channel);
+        VideoServiceGrpc.VideoServiceStub stub = ChannelPool.forTarget("plaintext://" + serverAddress + ":" + serverPort,
+                () -> ManagedChannelBuilder.forAddress(serverAddress, serverPort).usePlaintext()).newStub();
         VideoRequest request = VideoRequest.newBuilder().setFilename("video.mp4").build();
 
         streamingFile = File.createTempFile("streaming-video", ".mp4");
         System.out.println("\n📥 [DEBUG] Streaming video to: " + streamingFile.getAbsolutePath());
 
-        // Write the piped stream to a temporary file
-        new Thread(() -> {
-            try (FileOutputStream fileOutputStream = new FileOutputStream(streamingFile)) {
-                byte[] buffer = new byte[4096];
-                int bytesRead;
-                while ((bytesRead = pipedInputStream.read(buffer)) != -1) {
-                    fileOutputStream.write(buffer, 0, bytesRead);
-                }
-                fileOutputStream.flush();
-            } catch (IOException e) {
-                e.printStackTrace();
+        ChunkRing ring = new ChunkRing(RING_SLOTS, RING_BUFFER_SIZE);
+        AtomicReference<ClientCallStreamObserver<VideoRequest>> call = new AtomicReference<>();
+
+        stub.streamVideo(request, new ClientResponseObserver<VideoRequest, VideoChunk>() {
+            @Override
+            public void beforeStart(ClientCallStreamObserver<VideoRequest> requestStream) {
+                // Backpressure: gRPC delivers one chunk per free slot, the writer asks for the next one as it frees a slot
+                call.set(requestStream);
+                requestStream.disableAutoRequestWithInitial(ring.capacity());
             }
-        }).start();
 
-        stub.streamVideo(request, new StreamObserver<VideoChunk>() {
             @Override
             public void onNext(VideoChunk chunk) {
-                try {
-                    pipedOutputStream.write(chunk.getData().toByteArray());
-                    pipedOutputStream.flush();
-                    System.out.println("\n📦 [DEBUG] Streaming chunk: " + chunk.getData().size() + " bytes");
-
-                    if (streamingFile.length() > 4096) {
-                        Platform.runLater(() -> playVideo(streamingFile));
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
+                if (!ring.offer(chunk.getData(), chunk.getOffset())) {
+                    call.get().cancel("Chunk ring overflow", null);
                 }
             }
 
@@ -129,26 +118,64 @@ public class VideoClient extends Application {
             public void onError(Throwable t) {
                 System.err.println("\n❌ [ERROR] gRPC Error: " + t.getMessage());
                 t.printStackTrace();
+                ring.close();
             }
 
             @Override
             public void onCompleted() {
-                try {
-                    pipedOutputStream.close();
-                    channel.shutdown();
-                    System.out.println("\n✅ [DEBUG] Streaming complete!");
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                ring.close();
+                System.out.println("\n✅ [DEBUG] Streaming complete!");
             }
         });
+
+        // Write the ring to the temporary file, each chunk at the offset the server sent it for
+        new Thread(() -> writeToFile(ring, call.get()), "video-file-writer").start();
+    }
+
+    private static void writeToFile(ChunkRing ring, ClientCallStreamObserver<VideoRequest> call) {
+        long startTime = System.nanoTime();
+        long written = 0;
+        boolean playing = false;
+        try (FileChannel out = FileChannel.open(streamingFile.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer chunk;
+            while ((chunk = ring.take()) != null) {
+                long position = ring.offset();
+                while (chunk.hasRemaining()) {
+                    int bytes = out.write(chunk, position);
+                    position += bytes;
+                    written += bytes;
+                }
+                ring.release();
+                call.request(1);
+
+                if (!playing && written > 4096) {
+                    playing = true;
+                    Platform.runLater(() -> playVideo(streamingFile));
+                }
+            }
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            System.out.printf("💾 [DEBUG] Wrote %.2f MB in %.2f s (%.2f MB/s), ring of %d slots using %.2f MB%n",
+                    written / (1024.0 * 1024.0), seconds, written / (1024.0 * 1024.0) / seconds, ring.capacity(),
+                    ring.getAllocatedBytes() / (1024.0 * 1024.0));
+        } catch (IOException e) {
+            System.err.println("\n❌ [ERROR] Writing " + streamingFile + " failed: " + e.getMessage());
+            call.cancel("Error writing video file", e);
+        } catch (InterruptedException e) {
+            call.cancel("Writer interrupted", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static Stage playVideo(File videoFile) {
+        return playVideo(videoFile.toURI().toString());
     }
 
-    public static void playVideo(File videoFile) {
+    // Anything Media can open: a file URI or an http URL such as the loopback media server
+    public static Stage playVideo(String source) {
         System.out.println("\n📺 [DEBUG] Playing video...");
 
         Stage stage = new Stage();
-        Media media = new Media(videoFile.toURI().toString());
+        Media media = new Media(source);
         MediaPlayer mediaPlayer = new MediaPlayer(media);
         MediaView mediaView = new MediaView(mediaPlayer);
 
@@ -161,5 +188,6 @@ public class VideoClient extends Application {
         stage.show();
 
         mediaPlayer.play();
+        return stage;
     }
 }
\ No newline at end of file
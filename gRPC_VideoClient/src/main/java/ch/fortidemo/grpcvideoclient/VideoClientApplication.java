@@ -1,25 +1,30 @@
 package ch.fortidemo.grpcvideoclient;
 
-import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
-import io.grpc.stub.StreamObserver;
 import javafx.application.Platform;
 
 import ch.fortidemo.grpc.video.VideoServiceGrpc;
-import ch.fortidemo.grpc.video.VideoRequest;
-import ch.fortidemo.grpc.video.VideoChunk;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.OutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class VideoClientApplication {
-	private static File tempFile;
-	private static boolean isPlaying = false;
+	private static File videoFile;
+	private static volatile boolean isPlaying = false;
 
 	// Default values
 	private static String serverAddress = "localhost";
 	private static int serverPort = 9090;
+	private static final int PARALLEL_STREAMS = Integer.getInteger("video.streams", 1);
+	// -Dvideo.memory=true plays from a sliding window in memory instead of a temp file
+	private static final boolean MEMORY_MODE = Boolean.getBoolean("video.memory");
+	private static final int WINDOW_MB = Integer.getInteger("video.window.mb", 64);
+	// -Dvideo.cache=false downloads into a temp file every time instead of the on-disk cache
+	private static final boolean CACHE_ENABLED = Boolean.parseBoolean(System.getProperty("video.cache", "true"));
+	private static final long PROGRESS_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final AtomicLong nextProgressLog = new AtomicLong(System.nanoTime());
 
 	public static void main(String[] args) {
 		System.out.println("\n🚀 [DEBUG] Starting VideoClientApplication...");
@@ -47,63 +52,141 @@ public class VideoClientApplication {
 	private static void startGrpcClient() {
 		System.out.println("📡 Connecting to gRPC server: " + serverAddress + ":" + serverPort);
 
-		ManagedChannel channel = ManagedChannelBuilder.forAddress(serverAddress, serverPort)
-				.usePlaintext()
-				.build();
-
-		VideoServiceGrpc.VideoServiceStub stub = VideoServiceGrpc.newStub(channel);
-		VideoRequest request = VideoRequest.newBuilder().setFilename("video.mp4").build();
+		// Connections stay open for the next video instead of being built for every one
+		ChannelPool pool = ChannelPool.forTarget("plaintext://" + serverAddress + ":" + serverPort,
+				() -> ManagedChannelBuilder.forAddress(serverAddress, serverPort).usePlaintext());
 
 		try {
-			tempFile = File.createTempFile("video", ".mp4");
-			System.out.println("📥 Downloading video to: " + tempFile.getAbsolutePath());
-
-			OutputStream os = new FileOutputStream(tempFile);
+			if (MEMORY_MODE) {
+				streamFromMemory(pool.newStub());
+				return;
+			}
 
-			stub.streamVideo(request, new StreamObserver<VideoChunk>() {
-				private long totalBytesReceived = 0;
+			// Parallel ranges are written out of order, the cache only keeps a prefix of the file
+			VideoCache.Entry entry = CACHE_ENABLED && PARALLEL_STREAMS <= 1
+					? VideoCache.fromSystemProperties().open("plaintext://" + serverAddress + ":" + serverPort, "video.mp4")
+					: null;
+			if (entry != null) {
+				videoFile = entry.getFile();
+				System.out.printf("💾 [DEBUG] Video cache: %s, %.2f MB cached%n",
+						videoFile, entry.getCachedBytes() / (1024.0 * 1024.0));
+			} else {
+				videoFile = File.createTempFile("video", ".mp4");
+				System.out.println("📥 Downloading video to: " + videoFile.getAbsolutePath());
+			}
 
+			ResumableDownload.Listener listener = new ResumableDownload.Listener() {
 				@Override
-				public void onNext(VideoChunk chunk) {
-					try {
-						os.write(chunk.getData().toByteArray());
-						totalBytesReceived += chunk.getData().size();
-						System.out.printf("📦 [DEBUG] Received chunk: %d bytes (%.2f MB total)\n",
-								chunk.getData().size(), totalBytesReceived / (1024.0 * 1024.0));
-
-						// Start playing once we receive the first chunk
-						if (!isPlaying && totalBytesReceived > 1024 * 1024) { // Start playback after ~1MB
-							isPlaying = true;
-							Platform.runLater(() -> VideoClient.playVideo(tempFile));
-						}
-					} catch (Exception e) {
-						System.err.println("❌ [ERROR] Error writing chunk: " + e.getMessage());
-						e.printStackTrace();
+				public void onProgress(long bytesWritten) {
+					logProgress(bytesWritten);
+
+					// Start playing after ~1MB, or right away from a complete copy the server confirmed
+					if (!isPlaying && (bytesWritten > 1024 * 1024 || entry != null && entry.isComplete())) {
+						isPlaying = true;
+						Platform.runLater(() -> VideoClient.playVideo(videoFile));
 					}
 				}
 
 				@Override
-				public void onError(Throwable t) {
-					System.err.println("❌ [ERROR] gRPC Connection Error: " + t.getMessage());
-					t.printStackTrace();
+				public void onCompleted(File file) {
+					System.out.println("✅ [DEBUG] Video download complete!");
+					closeCacheEntry(entry);
 				}
 
 				@Override
-				public void onCompleted() {
-					try {
-						os.close();
-						System.out.println("✅ [DEBUG] Video download complete!");
-						channel.shutdown();
-					} catch (Exception e) {
-						System.err.println("❌ [ERROR] Error closing output stream: " + e.getMessage());
-						e.printStackTrace();
+				public void onFailed(Throwable t) {
+					System.err.println("❌ [ERROR] gRPC Connection Error: " + t.getMessage());
+					t.printStackTrace();
+					if (entry != null) {
+						// Keep the partial copy, the next start continues it
+						closeCacheEntry(entry);
+						if (!isPlaying && entry.isComplete()) {
+							System.out.println("⚠️ [DEBUG] Playing the cached copy, it could not be checked against the server");
+							isPlaying = true;
+							Platform.runLater(() -> VideoClient.playVideo(videoFile));
+						}
+						return;
+					}
+					// Nothing is playing from the partial file yet, so do not leave it behind
+					if (!isPlaying && !videoFile.delete()) {
+						System.err.println("❌ [ERROR] Could not delete partial download: " + videoFile.getAbsolutePath());
 					}
 				}
-			});
+			};
+
+			// -Dvideo.streams=N fetches N byte ranges in parallel instead of one sequential stream
+			if (PARALLEL_STREAMS > 1) {
+				new ParallelDownload(pool, "video.mp4", videoFile, PARALLEL_STREAMS, listener).start();
+			} else if (entry != null) {
+				new ResumableDownload(pool.newStub(), "video.mp4", entry, listener).start();
+			} else {
+				new ResumableDownload(pool.newStub(), "video.mp4", videoFile, listener).start();
+			}
 
 		} catch (Exception e) {
 			System.err.println("❌ [ERROR] Exception in gRPC client: " + e.getMessage());
 			e.printStackTrace();
 		}
 	}
+
+	private static void closeCacheEntry(VideoCache.Entry entry) {
+		if (entry == null) {
+			return;
+		}
+		try {
+			entry.close();
+		} catch (IOException e) {
+			System.err.println("❌ [ERROR] Could not update the video cache: " + e.getMessage());
+		}
+	}
+
+	// The player reads over loopback HTTP and waits in the window for bytes still on the way, so playback starts
+	// with the first chunk instead of after a threshold, and nothing touches the disk
+	private static void streamFromMemory(VideoServiceGrpc.VideoServiceStub stub) throws IOException {
+		if (PARALLEL_STREAMS > 1) {
+			System.out.println("⚠️ [DEBUG] The memory window is filled in order, ignoring video.streams=" + PARALLEL_STREAMS);
+		}
+		MemoryWindow window = new MemoryWindow(WINDOW_MB * 1024 * 1024, WINDOW_MB * 1024 * 1024 / 4);
+		LoopbackMediaServer mediaServer = new LoopbackMediaServer(window, "video.mp4");
+		String url = mediaServer.start();
+		System.out.println("📥 Streaming video into a " + WINDOW_MB + " MB memory window served at " + url);
+
+		new ResumableDownload(stub, "video.mp4", window, new ResumableDownload.Listener() {
+			@Override
+			public void onProgress(long bytesWritten) {
+				logProgress(bytesWritten);
+
+				if (!isPlaying) {
+					isPlaying = true;
+					// The media server keeps the JVM alive, so it goes with the player window
+					Platform.runLater(() -> VideoClient.playVideo(url).setOnHidden(event -> mediaServer.stop()));
+				}
+			}
+
+			@Override
+			public void onCompleted(File file) {
+				System.out.println("✅ [DEBUG] Video download complete!");
+				window.complete();
+			}
+
+			@Override
+			public void onFailed(Throwable t) {
+				System.err.println("❌ [ERROR] gRPC Connection Error: " + t.getMessage());
+				t.printStackTrace();
+				window.fail(t);
+				if (!isPlaying) {
+					mediaServer.stop();
+				}
+			}
+		}).start();
+	}
+
+	// Progress is reported on every chunk; print it at most once per interval, from whichever stream gets there first
+	private static void logProgress(long bytesWritten) {
+		long now = System.nanoTime();
+		long next = nextProgressLog.get();
+		if (now - next >= 0 && nextProgressLog.compareAndSet(next, now + PROGRESS_LOG_INTERVAL_NANOS)) {
+			System.out.printf("📦 Received %.2f MB%n", bytesWritten / (1024.0 * 1024.0));
+		}
+	}
 }
\ No newline at end of file
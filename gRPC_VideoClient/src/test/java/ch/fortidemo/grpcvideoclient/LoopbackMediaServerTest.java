@@ -0,0 +1,126 @@
+package ch.fortidemo.grpcvideoclient;
+
+import ch.fortidemo.grpc.video.StreamHeader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LoopbackMediaServerTest {
+
+	private final HttpClient http = HttpClient.newHttpClient();
+	private LoopbackMediaServer server;
+
+	@AfterEach
+	void tearDown() {
+		if (server != null) {
+			server.stop();
+		}
+	}
+
+	@Test
+	void servesRangesWhileTheDownloadIsStillArriving() throws Exception {
+		byte[] video = bytes(0, 4096);
+		MemoryWindow window = new MemoryWindow(1024, 256);
+		server = new LoopbackMediaServer(window, "video.mp4");
+		URI url = URI.create(server.start());
+
+		// Both requests go out before a single byte is there
+		CompletableFuture<HttpResponse<byte[]>> range = http.sendAsync(
+				HttpRequest.newBuilder(url).header("Range", "bytes=100-199").build(),
+				HttpResponse.BodyHandlers.ofByteArray());
+		CompletableFuture<HttpResponse<byte[]>> whole = http.sendAsync(HttpRequest.newBuilder(url).build(),
+				HttpResponse.BodyHandlers.ofByteArray());
+
+		window.onHeader(StreamHeader.newBuilder().setTotalSize(video.length).build());
+		window.write(ByteBuffer.wrap(video, 0, 1024), 0);
+		HttpResponse<byte[]> partial = range.get();
+		assertThat(partial.statusCode()).isEqualTo(206);
+		assertThat(partial.headers().firstValue("Content-Range")).hasValue("bytes 100-199/4096");
+		assertThat(partial.body()).isEqualTo(Arrays.copyOfRange(video, 100, 200));
+
+		// Four times the window, so the download has to wait for the player to move on
+		for (int offset = 1024; offset < video.length; offset += 256) {
+			window.write(ByteBuffer.wrap(video, offset, 256), offset);
+		}
+		window.complete();
+		assertThat(whole.get().statusCode()).isEqualTo(200);
+		assertThat(whole.get().body()).isEqualTo(video);
+
+		HttpResponse<Void> outside = http.send(HttpRequest.newBuilder(url).header("Range", "bytes=5000-").build(),
+				HttpResponse.BodyHandlers.discarding());
+		assertThat(outside.statusCode()).isEqualTo(416);
+	}
+
+	@Test
+	void dropsOldBytesOnlyOnceThePlayerIsPastThem() throws Exception {
+		MemoryWindow window = new MemoryWindow(8, 2);
+		window.write(ByteBuffer.wrap(bytes(0, 8)), 0);
+		CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+			try {
+				window.write(ByteBuffer.wrap(bytes(8, 4)), 8);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		Thread.sleep(200);
+		assertThat(writer).isNotDone();
+
+		byte[] buffer = new byte[6];
+		assertThat(window.read(0, buffer, 0, 6)).isEqualTo(6);
+		writer.get();
+		// Two bytes behind the furthest read stay for seeking back
+		assertThat(window.getBase()).isEqualTo(4);
+		assertThat(window.read(4, buffer, 0, 6)).isEqualTo(6);
+		assertThat(buffer).isEqualTo(bytes(4, 6));
+		assertThatThrownBy(() -> window.read(3, buffer, 0, 1)).isInstanceOf(IOException.class);
+	}
+
+	@Test
+	void keepsTheMoovSentAheadForThePlayer() throws Exception {
+		// 8 bytes of ftyp, the moov at [24, 32), and the samples in between, in the order the server sends them
+		MemoryWindow window = new MemoryWindow(8, 0);
+		window.onHeader(StreamHeader.newBuilder().setTotalSize(32).build());
+		window.write(ByteBuffer.wrap(bytes(0, 8)), 0);
+		window.write(ByteBuffer.wrap(bytes(24, 8)), 24);
+
+		byte[] buffer = new byte[8];
+		assertThat(window.read(26, buffer, 0, 8)).isEqualTo(6);
+		assertThat(Arrays.copyOf(buffer, 6)).isEqualTo(bytes(26, 6));
+
+		CompletableFuture<Void> samples = CompletableFuture.runAsync(() -> {
+			try {
+				window.write(ByteBuffer.wrap(bytes(8, 16)), 8);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		for (int position = 0; position < 24; position += 4) {
+			assertThat(window.read(position, buffer, 0, 4)).isEqualTo(4);
+			assertThat(Arrays.copyOf(buffer, 4)).isEqualTo(bytes(position, 4));
+		}
+		samples.get();
+		// The moov went through the ring as well and stays readable however far the window has moved
+		assertThat(window.getReceived()).isEqualTo(32);
+		assertThat(window.read(24, buffer, 0, 8)).isEqualTo(8);
+		assertThat(buffer).isEqualTo(bytes(24, 8));
+	}
+
+	private static byte[] bytes(int from, int count) {
+		byte[] bytes = new byte[count];
+		for (int i = 0; i < count; i++) {
+			bytes[i] = (byte) (from + i);
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,119 @@
+package ch.fortidemo.grpcvideoclient;
+
+import ch.fortidemo.grpc.video.StreamHeader;
+import ch.fortidemo.grpc.video.VideoChunk;
+import ch.fortidemo.grpc.video.VideoRequest;
+import ch.fortidemo.grpc.video.VideoServiceGrpc;
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelDownloadTest {
+	private static final int RANGES = 4;
+	private static final int RANGE_SIZE = 1024;
+	private static final byte[] VIDEO = new byte[RANGES * RANGE_SIZE];
+
+	static {
+		new Random(7).nextBytes(VIDEO);
+	}
+
+	@TempDir
+	Path dir;
+
+	private Server server;
+	private ManagedChannel channel;
+
+	@AfterEach
+	void tearDown() {
+		channel.shutdownNow();
+		server.shutdownNow();
+	}
+
+	@Test
+	void preallocatesTheFileAndReportsOnlyTheContiguousPrefix() throws Exception {
+		// The first range is held back until the three after it have been reported
+		CountDownLatch laterRanges = new CountDownLatch(RANGES - 1);
+		String name = InProcessServerBuilder.generateName();
+		server = InProcessServerBuilder.forName(name)
+				.addService(new VideoServiceGrpc.VideoServiceImplBase() {
+					@Override
+					public void streamVideo(VideoRequest request, StreamObserver<VideoChunk> responseObserver) {
+						int offset = (int) request.getOffset();
+						VideoChunk.Builder chunk = VideoChunk.newBuilder()
+								.setHeader(StreamHeader.newBuilder()
+										.setTotalSize(VIDEO.length)
+										.setOffset(offset)
+										.setLength(request.getLength()));
+						if (request.getLength() == 0) {
+							// The probe for the file size
+							responseObserver.onNext(chunk.build());
+							responseObserver.onCompleted();
+							return;
+						}
+						try {
+							if (offset == 0 && !laterRanges.await(10, TimeUnit.SECONDS)) {
+								throw new IllegalStateException("The later ranges did not finish");
+							}
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						responseObserver.onNext(chunk
+								.setData(ByteString.copyFrom(VIDEO, offset, (int) request.getLength()))
+								.setOffset(offset)
+								.build());
+						responseObserver.onCompleted();
+					}
+				})
+				.build()
+				.start();
+		channel = InProcessChannelBuilder.forName(name).build();
+		File file = dir.resolve("video.mp4").toFile();
+
+		List<Long> progress = new CopyOnWriteArrayList<>();
+		List<Long> fileLengths = new CopyOnWriteArrayList<>();
+		CompletableFuture<File> completed = new CompletableFuture<>();
+		new ParallelDownload(VideoServiceGrpc.newStub(channel), "video.mp4", file, RANGES, new ResumableDownload.Listener() {
+			@Override
+			public void onProgress(long bytesWritten) {
+				progress.add(bytesWritten);
+				fileLengths.add(file.length());
+				laterRanges.countDown();
+			}
+
+			@Override
+			public void onCompleted(File file) {
+				completed.complete(file);
+			}
+
+			@Override
+			public void onFailed(Throwable t) {
+				completed.completeExceptionally(t);
+			}
+		}).start();
+
+		assertThat(completed.get(10, TimeUnit.SECONDS)).isEqualTo(file);
+		assertThat(file).hasBinaryContent(VIDEO);
+		// Full size from the first write on, whichever range it came from
+		assertThat(fileLengths).isNotEmpty().allMatch(length -> length == VIDEO.length);
+		// Nothing counts while the first range is missing, then all of it at once
+		assertThat(progress).startsWith(0L, 0L, 0L).containsOnly(0L, (long) VIDEO.length);
+		assertThat(progress.get(progress.size() - 1)).isEqualTo(VIDEO.length);
+	}
+}
@@ -0,0 +1,116 @@
+package ch.fortidemo.grpcvideoclient;
+
+import com.google.protobuf.ByteString;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Bounded single-producer/single-consumer queue of video chunks between the gRPC callback (producer) and the
+// file writer (consumer). Every slot owns a direct buffer that is reused for the whole download and only grows
+// when a chunk does not fit, so memory stays at capacity x the largest chunk. The two sides only share the
+// head and tail counters; a waiting consumer is parked and woken by the next offer. The producer never waits:
+// it must not offer more chunks than free slots, which the caller ensures by requesting one message from
+// gRPC per released slot.
+public class ChunkRing {
+	private final ByteBuffer[] buffers;
+	private final long[] offsets;
+	private final int mask;
+	private final AtomicLong head = new AtomicLong(); // next slot to take, advanced by the consumer only
+	private final AtomicLong tail = new AtomicLong(); // next slot to fill, advanced by the producer only
+	private volatile boolean closed;
+	private volatile Thread waiting;
+	private long allocatedBytes;
+
+	// capacity is rounded up to a power of two
+	public ChunkRing(int capacity, int initialBufferSize) {
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		this.buffers = new ByteBuffer[size];
+		this.offsets = new long[size];
+		this.mask = size - 1;
+		for (int i = 0; i < size; i++) {
+			buffers[i] = ByteBuffer.allocateDirect(initialBufferSize);
+		}
+		this.allocatedBytes = (long) size * initialBufferSize;
+	}
+
+	public int capacity() {
+		return buffers.length;
+	}
+
+	// Producer: copies a chunk into the next slot; false if the ring is full
+	public boolean offer(ByteString data, long offset) {
+		long t = tail.get();
+		if (t - head.get() == buffers.length) {
+			return false;
+		}
+		int slot = (int) (t & mask);
+		ByteBuffer buffer = buffers[slot];
+		if (buffer.capacity() < data.size()) {
+			int grown = Math.max(data.size(), buffer.capacity() * 2);
+			allocatedBytes += grown - buffer.capacity();
+			buffer = ByteBuffer.allocateDirect(grown);
+			buffers[slot] = buffer;
+		}
+		buffer.clear();
+		data.copyTo(buffer);
+		buffer.flip();
+		offsets[slot] = offset;
+		tail.set(t + 1); // a full barrier, so the read of waiting below cannot move ahead of it
+		wakeConsumer();
+		return true;
+	}
+
+	// Producer: no more chunks; take() returns null once the remaining ones are consumed
+	public void close() {
+		closed = true;
+		wakeConsumer();
+	}
+
+	// Consumer: the oldest chunk, positioned for reading, or null when the ring is closed and empty.
+	// The buffer stays valid until release().
+	public ByteBuffer take() throws InterruptedException {
+		long h = head.get();
+		while (tail.get() == h) {
+			if (closed && tail.get() == h) {
+				return null;
+			}
+			waiting = Thread.currentThread();
+			// Check again after announcing ourselves, an offer in between would not unpark us
+			if (tail.get() == h && !closed) {
+				LockSupport.park(this);
+			}
+			waiting = null;
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+		return buffers[(int) (h & mask)];
+	}
+
+	// Consumer: file offset of the chunk returned by take()
+	public long offset() {
+		return offsets[(int) (head.get() & mask)];
+	}
+
+	// Consumer: hands the slot of the chunk returned by take() back to the producer
+	public void release() {
+		head.lazySet(head.get() + 1);
+	}
+
+	public int size() {
+		return (int) (tail.get() - head.get());
+	}
+
+	// Direct memory held by the slots; read it from the consumer once take() has returned null
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	private void wakeConsumer() {
+		Thread consumer = waiting;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package ch.fortidemo.grpcvideoclient;
+
+import ch.fortidemo.grpc.video.StreamHeader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Sliding window over a video that is still downloading, held in memory so the player never goes through a
+// temp file. Bytes [base, received) live in a ring where position p sits at p % capacity. The download appends
+// in order; when the ring is full it drops the oldest bytes, keeping backBuffer bytes behind the furthest read
+// for short seeks backwards, or else waits for the player. Waiting stalls the gRPC callback, so HTTP/2 flow
+// control holds the server back. Reads wait for bytes that have not arrived yet. One range may arrive ahead of
+// the rest, the moov box (the index) the server sends first for an MP4 that has it at the end: it is kept aside
+// for as long as the window lives, and copied into the ring when the download catches up with it. Without that,
+// a read so far ahead that it cannot fit lets the download push the window forward instead, and reading what
+// fell out of it fails.
+public class MemoryWindow implements ResumableDownload.Sink {
+	private final byte[] ring;
+	private final long backBuffer;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	private long base;
+	private long received;
+	private long furthestRead;
+	private long wantedAhead = -1; // furthest position a waiting read needs, -1 if none
+	private byte[] ahead; // the range that came ahead of its turn, from aheadStart on
+	private long aheadStart = -1;
+	private int aheadLength;
+	private long totalSize = -1;
+	private boolean complete;
+	private IOException failure;
+
+	public MemoryWindow(int capacity, int backBuffer) {
+		this.ring = new byte[capacity];
+		this.backBuffer = Math.min(backBuffer, capacity);
+	}
+
+	@Override
+	public void onHeader(StreamHeader header) {
+		lock.lock();
+		try {
+			totalSize = header.getTotalSize();
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void write(ByteBuffer data, long position) throws IOException {
+		lock.lock();
+		try {
+			// A resumed stream starts at the last byte we have, anything before it is a repeat
+			if (position < received) {
+				int repeated = (int) Math.min(data.remaining(), received - position);
+				data.position(data.position() + repeated);
+				position += repeated;
+			}
+			if (position > received && data.hasRemaining()) {
+				writeAhead(data, position);
+				return;
+			}
+			while (data.hasRemaining()) {
+				if (failure != null) {
+					throw failure;
+				}
+				int free = (int) (base + ring.length - received);
+				if (free == 0) {
+					long evictable = Math.max(furthestRead - backBuffer, wantedAhead - ring.length + 1) - base;
+					if (evictable <= 0) {
+						changed.await();
+						continue;
+					}
+					base = Math.min(received, base + Math.min(evictable, data.remaining()));
+					free = (int) (base + ring.length - received);
+				}
+				int length = Math.min(free, data.remaining());
+				int at = (int) (received % ring.length);
+				int first = Math.min(length, ring.length - at);
+				data.get(ring, at, first);
+				data.get(ring, 0, length - first);
+				received += length;
+				changed.signalAll();
+			}
+			if (ahead != null && received == aheadStart) {
+				// Caught up with the range sent ahead, which the server does not send again
+				write(ByteBuffer.wrap(ahead, 0, aheadLength), aheadStart);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the player");
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void writeAhead(ByteBuffer data, long position) throws IOException {
+		if (ahead == null) {
+			ahead = new byte[data.remaining()];
+			aheadStart = position;
+		}
+		if (position < aheadStart || position > aheadStart + aheadLength) {
+			throw new IOException("Expected byte " + received + " or " + (aheadStart + aheadLength)
+					+ " but the stream continues at " + position);
+		}
+		// A resumed stream sends the range again
+		int repeated = (int) Math.min(data.remaining(), aheadStart + aheadLength - position);
+		data.position(data.position() + repeated);
+		if (aheadLength + data.remaining() > ahead.length) {
+			ahead = Arrays.copyOf(ahead, Math.max(2 * ahead.length, aheadLength + data.remaining()));
+		}
+		int length = data.remaining();
+		data.get(ahead, aheadLength, length);
+		aheadLength += length;
+		changed.signalAll();
+	}
+
+	private boolean isAhead(long position) {
+		return ahead != null && position >= aheadStart && position < aheadStart + aheadLength;
+	}
+
+	// Copies up to length bytes from position, waiting until at least one is there; -1 at the end of the video
+	public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+		lock.lock();
+		try {
+			while (position >= received && !isAhead(position)) {
+				if (failure != null) {
+					throw failure;
+				}
+				if (complete || (totalSize >= 0 && position >= totalSize)) {
+					return -1;
+				}
+				if (position > wantedAhead) {
+					wantedAhead = position;
+					changed.signalAll(); // a download waiting for room may slide the window now
+				}
+				changed.await();
+			}
+			if (position >= wantedAhead) {
+				wantedAhead = -1;
+			}
+			if (isAhead(position)) {
+				int count = (int) Math.min(length, aheadStart + aheadLength - position);
+				System.arraycopy(ahead, (int) (position - aheadStart), buffer, offset, count);
+				return count;
+			}
+			if (position < base) {
+				throw new IOException("Byte " + position + " has left the memory window, which starts at " + base);
+			}
+			int count = (int) Math.min(length, received - position);
+			int at = (int) (position % ring.length);
+			int first = Math.min(count, ring.length - at);
+			System.arraycopy(ring, at, buffer, offset, first);
+			System.arraycopy(ring, 0, buffer, offset + first, count - first);
+			if (position + count > furthestRead) {
+				furthestRead = position + count;
+				changed.signalAll();
+			}
+			return count;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for video data");
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// Size of the whole video, once the first chunk has arrived
+	public long awaitTotalSize() throws IOException {
+		lock.lock();
+		try {
+			while (totalSize < 0) {
+				if (failure != null) {
+					throw failure;
+				}
+				changed.await();
+			}
+			return totalSize;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the stream header");
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// The download is done; reads past the last byte return -1 from now on
+	public void complete() {
+		lock.lock();
+		try {
+			complete = true;
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// The download gave up or the player is gone: fails waiting reads and writes
+	public void fail(Throwable cause) {
+		lock.lock();
+		try {
+			if (failure == null) {
+				failure = cause instanceof IOException io ? io : new IOException(cause.getMessage(), cause);
+			}
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int capacity() {
+		return ring.length;
+	}
+
+	public long getBase() {
+		lock.lock();
+		try {
+			return base;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getReceived() {
+		lock.lock();
+		try {
+			return received;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package ch.fortidemo.grpcvideoclient;
+
+import ch.fortidemo.grpc.video.VideoChunk;
+import ch.fortidemo.grpc.video.VideoRequest;
+import ch.fortidemo.grpc.video.VideoServiceGrpc;
+import io.grpc.stub.StreamObserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Splits a video into byte ranges fetched on concurrent streamVideo calls, so the transfer is not capped by
+// the flow-control window of a single HTTP/2 stream. Each range is written with positional writes into a
+// preallocated file; progress is reported as the length of the contiguous prefix so playback can start early.
+// Given a ChannelPool, every range takes the next pooled channel, so the ranges also spread over connections.
+public class ParallelDownload {
+	private static final Logger LOGGER = Logger.getLogger(ParallelDownload.class.getName());
+
+	private final Supplier<VideoServiceGrpc.VideoServiceStub> stubs;
+	private final String filename;
+	private final File file;
+	private final int streams;
+	private final ResumableDownload.Listener listener;
+
+	private long[] rangeStarts;
+	private AtomicLongArray rangeWritten;
+	private ResumableDownload[] ranges;
+	private final AtomicInteger remaining = new AtomicInteger();
+	private final AtomicBoolean failed = new AtomicBoolean();
+	private long totalSize;
+	private FileChannel out;
+
+	public ParallelDownload(VideoServiceGrpc.VideoServiceStub stub, String filename, File file, int streams,
+							ResumableDownload.Listener listener) {
+		this(() -> stub, filename, file, streams, listener);
+	}
+
+	public ParallelDownload(ChannelPool pool, String filename, File file, int streams,
+							ResumableDownload.Listener listener) {
+		this(pool::newStub, filename, file, streams, listener);
+	}
+
+	private ParallelDownload(Supplier<VideoServiceGrpc.VideoServiceStub> stubs, String filename, File file,
+							 int streams, ResumableDownload.Listener listener) {
+		this.stubs = stubs;
+		this.filename = filename;
+		this.file = file;
+		this.streams = streams;
+		this.listener = listener;
+	}
+
+	public void start() {
+		// An empty range returns just the stream header, which carries the file size
+		VideoRequest probe = VideoRequest.newBuilder()
+				.setFilename(filename)
+				.setOffset(0)
+				.setLength(0)
+				.build();
+
+		stubs.get().streamVideo(probe, new StreamObserver<VideoChunk>() {
+			@Override
+			public void onNext(VideoChunk chunk) {
+				if (chunk.hasHeader()) {
+					totalSize = chunk.getHeader().getTotalSize();
+				}
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				listener.onFailed(t);
+			}
+
+			@Override
+			public void onCompleted() {
+				try {
+					startRanges();
+				} catch (IOException e) {
+					LOGGER.log(Level.SEVERE, "❌ Cannot preallocate " + file, e);
+					listener.onFailed(e);
+				}
+			}
+		});
+	}
+
+	private void startRanges() throws IOException {
+		try (RandomAccessFile preallocated = new RandomAccessFile(file, "rw")) {
+			preallocated.setLength(totalSize);
+		}
+		out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+
+		int count = (int) Math.max(1, Math.min(streams, totalSize));
+		long rangeSize = (totalSize + count - 1) / count;
+		rangeStarts = new long[count + 1];
+		for (int i = 0; i <= count; i++) {
+			rangeStarts[i] = Math.min(totalSize, i * rangeSize);
+		}
+		rangeWritten = new AtomicLongArray(count);
+		ranges = new ResumableDownload[count];
+		remaining.set(count);
+		LOGGER.info(String.format("🔀 Downloading %s (%.2f MB) over %d parallel streams",
+				filename, totalSize / (1024.0 * 1024.0), count));
+
+		for (int i = 0; i < count; i++) {
+			int range = i;
+			ranges[i] = new ResumableDownload(stubs.get(), filename, file, out, rangeStarts[i], rangeStarts[i + 1],
+					new ResumableDownload.Listener() {
+						@Override
+						public void onProgress(long bytesWritten) {
+							rangeWritten.set(range, bytesWritten);
+							listener.onProgress(contiguousPrefix());
+						}
+
+						@Override
+						public void onCompleted(File file) {
+							rangeWritten.set(range, rangeStarts[range + 1] - rangeStarts[range]);
+							if (remaining.decrementAndGet() == 0) {
+								closeChannel();
+								listener.onProgress(totalSize);
+								listener.onCompleted(file);
+							}
+						}
+
+						@Override
+						public void onFailed(Throwable t) {
+							if (failed.compareAndSet(false, true)) {
+								for (ResumableDownload other : ranges) {
+									other.cancel();
+								}
+								closeChannel();
+								listener.onFailed(t);
+							}
+						}
+					});
+		}
+		for (ResumableDownload download : ranges) {
+			download.start();
+		}
+	}
+
+	// Bytes from the start of the file that are on disk without a gap
+	private long contiguousPrefix() {
+		long prefix = 0;
+		for (int i = 0; i < rangeWritten.length(); i++) {
+			long written = rangeWritten.get(i);
+			prefix += written;
+			if (written < rangeStarts[i + 1] - rangeStarts[i]) {
+				break;
+			}
+		}
+		return prefix;
+	}
+
+	private synchronized void closeChannel() {
+		try {
+			if (out.isOpen()) {
+				out.close();
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Error closing " + file, e);
+		}
+	}
+}
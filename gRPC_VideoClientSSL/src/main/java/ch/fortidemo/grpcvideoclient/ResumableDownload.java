@@ -0,0 +1,342 @@
+package ch.fortidemo.grpcvideoclient;
+
+import ch.fortidemo.grpc.video.StreamHeader;
+import ch.fortidemo.grpc.video.VideoChunk;
+import ch.fortidemo.grpc.video.VideoRequest;
+import ch.fortidemo.grpc.video.VideoServiceGrpc;
+import com.google.protobuf.ByteString;
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+// Downloads one video, or one byte range of it, into a file or another sink. When the stream breaks it
+// reconnects with exponential backoff and asks the server only for the bytes after the last one written.
+// A whole-file download sends the ETag of the bytes it has along, so if the file changed on the server in
+// between, it gets the new version from the start instead of a range of it glued onto the old one.
+// With -Dvideo.verify (default true) every chunk is checked against its CRC32C before it is written, and a bad
+// one is fetched again. A download that sees the file from its first byte also hashes it in file order as it
+// arrives and checks the server's SHA-256 at the end; if that does not match, the sink is invalidated and the
+// download fails.
+// Whole-file downloads ask for the moov box of an MP4 ahead of its media data (-Dvideo.moov.first, default true),
+// so a sink gets it at its offset near the end long before the bytes in between. The download counts as far as
+// the file has arrived without gaps, and resumes from there.
+public class ResumableDownload {
+	private static final Logger LOGGER = Logger.getLogger(ResumableDownload.class.getName());
+	private static final long INITIAL_BACKOFF_MS = 500;
+	private static final long MAX_BACKOFF_MS = 30_000;
+	private static final int MAX_ATTEMPTS = 10;
+	private static final boolean VERIFY = Boolean.parseBoolean(System.getProperty("video.verify", "true"));
+	private static final boolean MOOV_FIRST = Boolean.parseBoolean(System.getProperty("video.moov.first", "true"));
+	private static final Set<Status.Code> RETRYABLE = EnumSet.of(
+			Status.Code.UNAVAILABLE, Status.Code.DEADLINE_EXCEEDED, Status.Code.ABORTED,
+			Status.Code.INTERNAL, Status.Code.RESOURCE_EXHAUSTED, Status.Code.DATA_LOSS);
+	private static final ScheduledExecutorService RETRY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "download-retry");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public interface Listener {
+		void onProgress(long bytesWritten);
+
+		void onCompleted(File file);
+
+		void onFailed(Throwable t);
+	}
+
+	// Takes the downloaded bytes at their position in the video. It runs on the gRPC callback thread, so a sink
+	// that blocks holds back the stream until it returns.
+	public interface Sink {
+		// Every stream starts with a header, including the streams of a resumed download
+		default void onHeader(StreamHeader header) throws IOException {
+		}
+
+		void write(ByteBuffer data, long position) throws IOException;
+
+		// What was written is not the file after all, its SHA-256 did not match
+		default void invalidate() throws IOException {
+		}
+	}
+
+	private final VideoServiceGrpc.VideoServiceStub stub;
+	private final String filename;
+	private final File file;
+	private final Sink out;
+	private final FileChannel ownedChannel; // closed when the download ends, null if the caller owns the output
+	private final long start;
+	private final long end; // exclusive, -1 = until the end of the file
+	private final Listener listener;
+
+	private final ReceivedPrefix received;
+	private volatile long position; // received.get(), for other threads
+	private volatile String ifRange;
+	private volatile boolean cancelled;
+	private volatile ClientCallStreamObserver<VideoRequest> currentCall;
+	private int failedAttempts;
+	private final CRC32C crc = new CRC32C();
+	private MessageDigest digest; // over every byte from the start of the file, null unless they all came through here
+	private long hashed; // the digest covers the file up to here
+	private final List<ByteString> hashedLater = new ArrayList<>(); // arrived ahead of hashed, i.e. the moov
+	private long hashedLaterStart = -1;
+	private long hashedLaterEnd = -1;
+
+	public ResumableDownload(VideoServiceGrpc.VideoServiceStub stub, String filename, File file, Listener listener) throws IOException {
+		this(stub, filename, file, FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING), true, 0, -1, listener);
+	}
+
+	// Fetches the whole video into a sink instead of a file; listener.onCompleted gets a null file
+	public ResumableDownload(VideoServiceGrpc.VideoServiceStub stub, String filename, Sink out, Listener listener) {
+		this(stub, filename, null, out, null, 0, -1, listener);
+	}
+
+	// Continues a cached copy after its last byte, or starts it over if the server has a different version by now
+	public ResumableDownload(VideoServiceGrpc.VideoServiceStub stub, String filename, VideoCache.Entry entry,
+							 Listener listener) {
+		this(stub, filename, entry.getFile(), entry, null, 0, -1, listener);
+		this.position = entry.getCachedBytes();
+		this.received.reset(position);
+		this.ifRange = entry.getEtag();
+	}
+
+	// Fetches [start, end) into a channel shared with other range downloads of the same file
+	public ResumableDownload(VideoServiceGrpc.VideoServiceStub stub, String filename, File file, FileChannel out,
+							 long start, long end, Listener listener) {
+		this(stub, filename, file, out, false, start, end, listener);
+	}
+
+	private ResumableDownload(VideoServiceGrpc.VideoServiceStub stub, String filename, File file, FileChannel channel,
+							  boolean ownsChannel, long start, long end, Listener listener) {
+		this(stub, filename, file, (data, position) -> {
+			while (data.hasRemaining()) {
+				position += channel.write(data, position);
+			}
+		}, ownsChannel ? channel : null, start, end, listener);
+	}
+
+	private ResumableDownload(VideoServiceGrpc.VideoServiceStub stub, String filename, File file, Sink out,
+							  FileChannel ownedChannel, long start, long end, Listener listener) {
+		this.stub = stub;
+		this.filename = filename;
+		this.file = file;
+		this.out = out;
+		this.ownedChannel = ownedChannel;
+		this.start = start;
+		this.end = end;
+		this.listener = listener;
+		this.position = start;
+		this.received = new ReceivedPrefix(start);
+	}
+
+	public void start() {
+		requestRemainder();
+	}
+
+	public long getBytesWritten() {
+		return position - start;
+	}
+
+	public void cancel() {
+		cancelled = true;
+		ClientCallStreamObserver<VideoRequest> call = currentCall;
+		if (call != null) {
+			call.cancel("Download cancelled", null);
+		}
+	}
+
+	private void requestRemainder() {
+		if (cancelled) {
+			return;
+		}
+		VideoRequest.Builder request = VideoRequest.newBuilder()
+				.setFilename(filename)
+				.setOffset(position)
+				.setChecksums(VERIFY);
+		if (end >= 0) {
+			request.setLength(end - position);
+		} else {
+			request.setMoovFirst(MOOV_FIRST);
+			if (ifRange != null) {
+				request.setIfRange(ifRange);
+			}
+		}
+
+		stub.streamVideo(request.build(), new ClientResponseObserver<VideoRequest, VideoChunk>() {
+			private Status aborted; // why this side cancelled the call; chunks still on the way are dropped
+
+			@Override
+			public void beforeStart(ClientCallStreamObserver<VideoRequest> requestStream) {
+				currentCall = requestStream;
+			}
+
+			@Override
+			public void onNext(VideoChunk chunk) {
+				if (aborted != null) {
+					return;
+				}
+				try {
+					if (chunk.hasHeader()) {
+						if (!chunk.getHeader().getEtag().isEmpty()) {
+							ifRange = chunk.getHeader().getEtag();
+						}
+						if (chunk.getHeader().getOffset() != received.get()) {
+							// Another version of the file, from its first byte
+							received.reset(chunk.getHeader().getOffset());
+						}
+						// A moov that came ahead on a broken call is sent again
+						hashedLater.clear();
+						hashedLaterStart = -1;
+						if (VERIFY && end < 0 && chunk.getHeader().getOffset() == 0) {
+							// All of the file is about to come through here
+							digest = sha256();
+							hashed = 0;
+						} else if (digest != null && chunk.getHeader().getOffset() != hashed) {
+							digest = null;
+						}
+						out.onHeader(chunk.getHeader());
+					}
+					if (chunk.hasCrc32C() && crc32c(chunk) != chunk.getCrc32C()) {
+						// Corrupted on the way, the retry asks for it again
+						abort(Status.DATA_LOSS.withDescription(String.format("Chunk %d of %s at byte %d failed its CRC32C check",
+								chunk.getChunkIndex(), filename, chunk.getOffset())));
+						return;
+					}
+					// Write at the offset the server says the data belongs to
+					out.write(chunk.getData().asReadOnlyByteBuffer(), chunk.getOffset());
+					position = received.add(chunk.getOffset(), chunk.getData().size());
+					if (digest != null) {
+						hash(chunk.getOffset(), chunk.getData());
+						if (!chunk.getFileSha256().isEmpty()
+								&& !MessageDigest.isEqual(digest.digest(), chunk.getFileSha256().toByteArray())) {
+							digest = null;
+							out.invalidate();
+							throw new IOException("SHA-256 of " + filename + " does not match the server's");
+						}
+					}
+					failedAttempts = 0;
+					listener.onProgress(position - start);
+				} catch (IOException e) {
+					// A local write problem or a corrupted file will not go away by reconnecting
+					abort(Status.CANCELLED.withDescription("Error writing video chunk").withCause(e));
+				}
+			}
+
+			private void abort(Status status) {
+				aborted = status;
+				currentCall.cancel(status.getDescription(), status.getCause());
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				if (aborted != null) {
+					t = aborted.asRuntimeException();
+				}
+				Status status = Status.fromThrowable(t);
+				if (!cancelled && RETRYABLE.contains(status.getCode()) && ++failedAttempts <= MAX_ATTEMPTS) {
+					long backoff = Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << (failedAttempts - 1));
+					backoff += ThreadLocalRandom.current().nextLong(backoff / 5 + 1); // jitter so clients do not reconnect in lockstep
+					LOGGER.warning(String.format("⚠️ Stream interrupted (%s) at byte %d, retry %d/%d in %d ms",
+							status.getCode(), position, failedAttempts, MAX_ATTEMPTS, backoff));
+					RETRY_SCHEDULER.schedule(ResumableDownload.this::requestRemainder, backoff, TimeUnit.MILLISECONDS);
+					return;
+				}
+
+				if (!cancelled) {
+					LOGGER.log(Level.SEVERE, "❌ Download of " + filename + " failed, giving up", t);
+				}
+				close();
+				listener.onFailed(t);
+			}
+
+			@Override
+			public void onCompleted() {
+				if (aborted != null) {
+					// The server had sent everything before the cancel reached it
+					onError(aborted.asRuntimeException());
+					return;
+				}
+				close();
+				listener.onCompleted(file);
+			}
+		});
+	}
+
+	private int crc32c(VideoChunk chunk) {
+		crc.reset();
+		for (ByteBuffer piece : chunk.getData().asReadOnlyByteBufferList()) {
+			crc.update(piece);
+		}
+		return (int) crc.getValue();
+	}
+
+	// Feeds the digest in file order: a moov sent ahead is held until the media data before it has been hashed
+	private void hash(long position, ByteString data) {
+		if (data.isEmpty()) {
+			return;
+		}
+		if (position != hashed) {
+			if (position < hashed || hashedLaterStart >= 0 && position != hashedLaterEnd) {
+				// Neither in order nor right after what came ahead: no digest to check
+				digest = null;
+				return;
+			}
+			if (hashedLaterStart < 0) {
+				hashedLaterStart = position;
+			}
+			hashedLater.add(data);
+			hashedLaterEnd = position + data.size();
+			return;
+		}
+		update(data);
+		if (hashed == hashedLaterStart) {
+			hashedLater.forEach(this::update);
+			hashedLater.clear();
+			hashedLaterStart = -1;
+		}
+	}
+
+	private void update(ByteString data) {
+		for (ByteBuffer piece : data.asReadOnlyByteBufferList()) {
+			digest.update(piece);
+		}
+		hashed += data.size();
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is missing from this JVM", e);
+		}
+	}
+
+	private void close() {
+		if (ownedChannel == null) {
+			return;
+		}
+		try {
+			ownedChannel.close();
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Error closing " + file, e);
+		}
+	}
+}
@@ -0,0 +1,274 @@
+package ch.fortidemo.grpcvideoclient;
+
+import ch.fortidemo.grpc.video.StreamHeader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// On-disk cache of downloaded videos, so a replay plays from local disk and an interrupted download continues
+// where it stopped. Each video of a server is a data file plus a properties file with the server's ETag, the
+// size and whether the copy is complete. A cached copy is only used once the server has confirmed it: the
+// download asks for the bytes after the cached ones with the ETag as if_range, which for an unchanged complete
+// file is an empty range, and for a changed file is the whole new version. Once the cache is over its cap, the
+// least recently used entries that are not open are deleted. Only as many bytes as the properties file says
+// arrived without a gap are trusted, plus a moov that it says arrived ahead of them, as a client that is killed
+// leaves whatever it had written in the data file; entries still open at a normal exit are closed by a shutdown hook.
+public class VideoCache {
+	private static final Logger LOGGER = Logger.getLogger(VideoCache.class.getName());
+	private static final String DATA = ".mp4";
+	private static final String METADATA = ".properties";
+	private static final long SAVE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1); // how far the saved length may lag
+	private static final Set<Entry> OPEN = ConcurrentHashMap.newKeySet();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(VideoCache::closeAll, "video-cache-shutdown"));
+	}
+
+	private final Path directory;
+	private final long maxBytes;
+	private final Set<Path> inUse = ConcurrentHashMap.newKeySet();
+
+	public VideoCache(Path directory, long maxBytes) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.maxBytes = maxBytes;
+	}
+
+	// -Dvideo.cache.dir (default ~/.grpc-video-cache) capped at -Dvideo.cache.max.mb (default 4096)
+	public static VideoCache fromSystemProperties() throws IOException {
+		Path directory = Paths.get(System.getProperty("video.cache.dir",
+				Paths.get(System.getProperty("user.home"), ".grpc-video-cache").toString()));
+		return new VideoCache(directory, Long.getLong("video.cache.max.mb", 4096) * 1024 * 1024);
+	}
+
+	// The copy of filename from server, which is part of the key as two servers may have different files under
+	// the same name. Close the entry when its download is over.
+	public Entry open(String server, String filename) throws IOException {
+		String key = UUID.nameUUIDFromBytes((server + "/" + filename).getBytes(StandardCharsets.UTF_8)).toString();
+		Path data = directory.resolve(key + DATA);
+		if (!inUse.add(data)) {
+			throw new IOException(filename + " from " + server + " is already being downloaded");
+		}
+		try {
+			return new Entry(data, directory.resolve(key + METADATA), server, filename);
+		} catch (IOException e) {
+			inUse.remove(data);
+			throw e;
+		}
+	}
+
+	static void closeAll() {
+		for (Entry entry : OPEN) {
+			try {
+				entry.close();
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Could not close " + entry.getFile(), e);
+			}
+		}
+	}
+
+	// Deletes the least recently used entries that are not open until the cache fits its cap
+	synchronized void evict() throws IOException {
+		record Cached(Path data, Path metadata, long size, FileTime used) {
+		}
+		List<Cached> entries = new ArrayList<>();
+		long total = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + METADATA)) {
+			for (Path metadata : files) {
+				String name = metadata.getFileName().toString();
+				Path data = directory.resolve(name.substring(0, name.length() - METADATA.length()) + DATA);
+				long size = Files.exists(data) ? Files.size(data) : 0;
+				entries.add(new Cached(data, metadata, size, Files.getLastModifiedTime(metadata)));
+				total += size;
+			}
+		}
+		entries.sort(Comparator.comparing(Cached::used));
+		for (Cached entry : entries) {
+			if (total <= maxBytes) {
+				break;
+			}
+			if (inUse.contains(entry.data())) {
+				continue;
+			}
+			Files.deleteIfExists(entry.data());
+			Files.deleteIfExists(entry.metadata());
+			total -= entry.size();
+			LOGGER.info(String.format("🧹 Evicted %s (%.2f MB) from the video cache",
+					entry.data().getFileName(), entry.size() / (1024.0 * 1024.0)));
+		}
+	}
+
+	// One cached video, written by a ResumableDownload. Opening or closing it counts as a use for eviction.
+	public final class Entry implements ResumableDownload.Sink, Closeable {
+		private final Path data;
+		private final Path metadata;
+		private final Properties properties = new Properties();
+		private final FileChannel channel;
+		private final ReceivedPrefix received;
+		private String etag;
+		private long size;
+		private long length; // bytes on disk without a gap from the start; a moov sent ahead may lie beyond
+		private boolean complete;
+		private long savedAt;
+		private boolean closed;
+
+		private Entry(Path data, Path metadata, String server, String filename) throws IOException {
+			this.data = data;
+			this.metadata = metadata;
+			if (Files.exists(metadata)) {
+				try (Reader reader = Files.newBufferedReader(metadata, StandardCharsets.UTF_8)) {
+					properties.load(reader);
+				}
+			}
+			properties.setProperty("server", server);
+			properties.setProperty("filename", filename);
+			channel = FileChannel.open(data, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			etag = properties.getProperty("etag");
+			size = Long.parseLong(properties.getProperty("size", "-1"));
+			if (etag == null || etag.isEmpty()) {
+				// Nothing the server could confirm these bytes with
+				etag = null;
+				channel.truncate(0);
+			}
+			// Whatever else is in the file was written after the last save, or lies beyond a gap
+			length = Math.min(channel.size(), Long.parseLong(properties.getProperty("length", "0")));
+			long aheadStart = Long.parseLong(properties.getProperty("ahead.start", "-1"));
+			long aheadEnd = Long.parseLong(properties.getProperty("ahead.end", "-1"));
+			if (aheadStart > length && aheadEnd > aheadStart && aheadEnd <= Math.min(channel.size(), size)) {
+				channel.truncate(aheadEnd);
+				received = new ReceivedPrefix(length, aheadStart, aheadEnd);
+			} else {
+				channel.truncate(length);
+				received = new ReceivedPrefix(length);
+			}
+			complete = Boolean.parseBoolean(properties.getProperty("complete")) && length == size;
+			save();
+			OPEN.add(this);
+		}
+
+		public File getFile() {
+			return data.toFile();
+		}
+
+		// Bytes from the start of the file that are on disk
+		public long getCachedBytes() {
+			return length;
+		}
+
+		// The version the cached bytes belong to, null if there are none
+		public String getEtag() {
+			return etag;
+		}
+
+		// All of the file is on disk; before the server has answered, that is as of the last download
+		public boolean isComplete() {
+			return complete;
+		}
+
+		@Override
+		public synchronized void onHeader(StreamHeader header) throws IOException {
+			if (!header.getEtag().equals(etag)) {
+				// Another version, streamed from the start: what we have of the old one is worthless
+				channel.truncate(header.getOffset());
+				length = Math.min(length, header.getOffset());
+				received.reset(length);
+				complete = false;
+			}
+			etag = header.getEtag().isEmpty() ? null : header.getEtag();
+			size = header.getTotalSize();
+			complete |= length == size;
+			save();
+		}
+
+		@Override
+		public synchronized void write(ByteBuffer buffer, long position) throws IOException {
+			long start = position;
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+			length = received.add(start, position - start);
+			if (length == size && !complete) {
+				complete = true;
+				save();
+			} else if (System.nanoTime() - savedAt >= SAVE_INTERVAL_NANOS) {
+				save();
+			}
+		}
+
+		@Override
+		public synchronized void invalidate() throws IOException {
+			channel.truncate(0);
+			length = 0;
+			received.reset(0);
+			etag = null;
+			complete = false;
+			save();
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			OPEN.remove(this);
+			try {
+				// Bytes past a gap are not kept unless they arrived ahead on purpose, the next download continues
+				// from the gap
+				channel.truncate(Math.max(length, received.getAheadEnd()));
+				channel.close();
+				save();
+			} finally {
+				inUse.remove(data);
+			}
+			evict();
+		}
+
+		private void save() throws IOException {
+			properties.setProperty("size", Long.toString(size));
+			properties.setProperty("length", Long.toString(length));
+			if (received.getAheadStart() >= 0) {
+				properties.setProperty("ahead.start", Long.toString(received.getAheadStart()));
+				properties.setProperty("ahead.end", Long.toString(received.getAheadEnd()));
+			} else {
+				properties.remove("ahead.start");
+				properties.remove("ahead.end");
+			}
+			properties.setProperty("complete", Boolean.toString(complete));
+			if (etag != null) {
+				properties.setProperty("etag", etag);
+			} else {
+				properties.remove("etag");
+			}
+			// A crash halfway through leaves the temporary file, never a torn properties file
+			Path temporary = metadata.resolveSibling(metadata.getFileName() + ".tmp");
+			try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+				properties.store(writer, null);
+			}
+			Files.move(temporary, metadata, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			savedAt = System.nanoTime();
+		}
+	}
+}
@@ -1,9 +1,8 @@
 package ch.fortidemo.grpcvideoclient;
 
-import io.grpc.ManagedChannel;
 import io.grpc.netty.shaded.io.grpc.netty.GrpcSslContexts;
 import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
-import io.grpc.stub.StreamObserver;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslContext;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.scene.Scene;
@@ -13,24 +12,32 @@ import javafx.scene.media.MediaPlayer;
 import javafx.scene.media.MediaView;
 import javafx.stage.Stage;
 import ch.fortidemo.grpc.video.VideoServiceGrpc;
-import ch.fortidemo.grpc.video.VideoRequest;
-import ch.fortidemo.grpc.video.VideoChunk;
 import org.springframework.core.io.ClassPathResource;
 
 import java.io.*;
 import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class VideoClientApplication extends Application {
 	private static final Logger LOGGER = Logger.getLogger(VideoClientApplication.class.getName());
-	private static File tempFile;
+	private static File videoFile;
 	private static MediaPlayer mediaPlayer;
 	private static boolean isPlaying = false;
-	private static long totalBytesReceived = 0;
+	private static volatile long totalBytesReceived = 0;
 	private static String serverAddress = "localhost";
 	private static int serverPort = 9090;
-	private static OutputStream os;
+	private static final int PARALLEL_STREAMS = Integer.getInteger("video.streams", 1);
+	// -Dvideo.memory=true plays from a sliding window in memory instead of a temp file
+	private static final boolean MEMORY_MODE = Boolean.getBoolean("video.memory");
+	private static final int WINDOW_MB = Integer.getInteger("video.window.mb", 64);
+	// -Dvideo.cache=false downloads into a temp file every time instead of the on-disk cache
+	private static final boolean CACHE_ENABLED = Boolean.parseBoolean(System.getProperty("video.cache", "true"));
+	private static LoopbackMediaServer mediaServer;
+	private static final long PROGRESS_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final AtomicLong nextProgressLog = new AtomicLong(System.nanoTime());
 	private static boolean isVideoReady = false;
 
 	public static void main(String[] args) {
@@ -57,68 +64,151 @@ public class VideoClientApplication extends Application {
 		new Thread(this::startGrpcClient).start();
 	}
 
+	@Override
+	public void stop() {
+		if (mediaServer != null) {
+			mediaServer.stop();
+		}
+		ChannelPool.shutdownAll();
+	}
+
 	private void startGrpcClient() {
 		try {
 			ClassPathResource trustCertResource = new ClassPathResource("certs/ca.crt");
 			InputStream trustCertStream = trustCertResource.getInputStream();
 			LOGGER.info("✅ TLS Certificate loaded successfully.");
 
-			ManagedChannel channel = NettyChannelBuilder.forAddress(serverAddress, serverPort)
-					.overrideAuthority("grpc-video-server-local")
-					.sslContext(GrpcSslContexts.forClient().trustManager(trustCertStream).build())
-					.build();
-
-			VideoServiceGrpc.VideoServiceStub stub = VideoServiceGrpc.newStub(channel);
-			VideoRequest request = VideoRequest.newBuilder().setFilename("video.mp4").build();
+			SslContext sslContext = GrpcSslContexts.forClient().trustManager(trustCertStream).build();
+			// Connections stay open for the next video, which then skips the TLS handshake
+			ChannelPool pool = ChannelPool.forTarget("tls://" + serverAddress + ":" + serverPort,
+					() -> NettyChannelBuilder.forAddress(serverAddress, serverPort)
+							.overrideAuthority("grpc-video-server-local")
+							.sslContext(sslContext));
 
-			tempFile = Files.createTempFile("streaming-video", ".mp4").toFile();
-			LOGGER.info("📥 Downloading video to: " + tempFile.getAbsolutePath());
+			if (MEMORY_MODE) {
+				streamFromMemory(pool.newStub());
+				return;
+			}
 
-			os = new BufferedOutputStream(new FileOutputStream(tempFile), 10 * 1024 * 1024); // 10MB buffer
+			// Parallel ranges are written out of order, the cache only keeps a prefix of the file
+			VideoCache.Entry entry = CACHE_ENABLED && PARALLEL_STREAMS <= 1
+					? VideoCache.fromSystemProperties().open("tls://" + serverAddress + ":" + serverPort, "video.mp4")
+					: null;
+			if (entry != null) {
+				videoFile = entry.getFile();
+				LOGGER.info(entry.getCachedBytes() == 0 ? "📥 Downloading video into the cache: " + videoFile
+						: String.format("💾 %.2f MB of the video are cached in %s, checking they are current",
+						entry.getCachedBytes() / (1024.0 * 1024.0), videoFile));
+			} else {
+				videoFile = Files.createTempFile("streaming-video", ".mp4").toFile();
+				LOGGER.info("📥 Downloading video to: " + videoFile.getAbsolutePath());
+			}
 
-			stub.streamVideo(request, new StreamObserver<VideoChunk>() {
+			ResumableDownload.Listener listener = new ResumableDownload.Listener() {
 				@Override
-				public void onNext(VideoChunk chunk) {
-					try {
-						byte[] data = chunk.getData().toByteArray();
-						os.write(data);
-						os.flush();
-						totalBytesReceived += data.length;
-
-						// Start playback after 10MB is received
-						if (!isPlaying && totalBytesReceived >= 10 * 1024 * 1024) {
-							isPlaying = true;
-							isVideoReady = true;
-							Platform.runLater(() -> playVideo(tempFile));
-						}
-					} catch (IOException e) {
-						LOGGER.log(Level.SEVERE, "Error writing video chunk", e);
+				public void onProgress(long bytesWritten) {
+					totalBytesReceived = bytesWritten;
+					logProgress(bytesWritten);
+
+					// Start playback after 10MB is received, or right away from a complete copy the server confirmed
+					if (!isPlaying && (totalBytesReceived >= 10 * 1024 * 1024 || entry != null && entry.isComplete())) {
+						isPlaying = true;
+						isVideoReady = true;
+						Platform.runLater(() -> playVideo(videoFile.toURI().toString()));
 					}
 				}
 
 				@Override
-				public void onError(Throwable t) {
-					LOGGER.log(Level.SEVERE, "❌ gRPC Connection Error: " + t.getMessage(), t);
+				public void onCompleted(File file) {
+					LOGGER.info("✅ Video download complete!");
+					closeCacheEntry(entry);
 				}
 
 				@Override
-				public void onCompleted() {
-					try {
-						os.close();
-						LOGGER.info("✅ Video download complete!");
-						channel.shutdown();
-					} catch (IOException e) {
-						LOGGER.log(Level.SEVERE, "Error closing stream", e);
+				public void onFailed(Throwable t) {
+					LOGGER.log(Level.SEVERE, "❌ gRPC Connection Error: " + t.getMessage(), t);
+					if (entry != null) {
+						// Keep the partial copy, the next start continues it
+						closeCacheEntry(entry);
+						if (!isPlaying && entry.isComplete()) {
+							LOGGER.warning("⚠️ Playing the cached copy, it could not be checked against the server");
+							isPlaying = true;
+							isVideoReady = true;
+							playVideo(videoFile.toURI().toString());
+						}
+						return;
+					}
+					// Nothing is playing from the partial file yet, so do not leave it behind
+					if (!isPlaying && !videoFile.delete()) {
+						LOGGER.warning("Could not delete partial download " + videoFile.getAbsolutePath());
 					}
 				}
-			});
+			};
+
+			// -Dvideo.streams=N fetches N byte ranges in parallel instead of one sequential stream
+			if (PARALLEL_STREAMS > 1) {
+				new ParallelDownload(pool, "video.mp4", videoFile, PARALLEL_STREAMS, listener).start();
+			} else if (entry != null) {
+				new ResumableDownload(pool.newStub(), "video.mp4", entry, listener).start();
+			} else {
+				new ResumableDownload(pool.newStub(), "video.mp4", videoFile, listener).start();
+			}
 
 		} catch (Exception e) {
 			LOGGER.log(Level.SEVERE, "❌ Exception in gRPC client", e);
 		}
 	}
 
-	private void playVideo(File videoFile) {
+	private static void closeCacheEntry(VideoCache.Entry entry) {
+		if (entry == null) {
+			return;
+		}
+		try {
+			entry.close();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Could not update the video cache", e);
+		}
+	}
+
+	// The player reads over loopback HTTP and waits in the window for bytes still on the way, so playback starts
+	// with the first chunk instead of after a threshold, and nothing touches the disk
+	private void streamFromMemory(VideoServiceGrpc.VideoServiceStub stub) throws IOException {
+		if (PARALLEL_STREAMS > 1) {
+			LOGGER.warning("⚠️ The memory window is filled in order, ignoring video.streams=" + PARALLEL_STREAMS);
+		}
+		MemoryWindow window = new MemoryWindow(WINDOW_MB * 1024 * 1024, WINDOW_MB * 1024 * 1024 / 4);
+		mediaServer = new LoopbackMediaServer(window, "video.mp4");
+		String url = mediaServer.start();
+		LOGGER.info("📥 Streaming video into a " + WINDOW_MB + " MB memory window served at " + url);
+
+		new ResumableDownload(stub, "video.mp4", window, new ResumableDownload.Listener() {
+			@Override
+			public void onProgress(long bytesWritten) {
+				totalBytesReceived = bytesWritten;
+				logProgress(bytesWritten);
+
+				if (!isPlaying) {
+					isPlaying = true;
+					isVideoReady = true;
+					playVideo(url);
+				}
+			}
+
+			@Override
+			public void onCompleted(File file) {
+				LOGGER.info("✅ Video download complete!");
+				window.complete();
+			}
+
+			@Override
+			public void onFailed(Throwable t) {
+				LOGGER.log(Level.SEVERE, "❌ gRPC Connection Error: " + t.getMessage(), t);
+				window.fail(t);
+			}
+		}).start();
+	}
+
+	private void playVideo(String source) {
 		if (!isVideoReady) {
 			LOGGER.warning("🚨 Video is not ready yet! Waiting for more data...");
 			return;
@@ -126,9 +216,9 @@ public class VideoClientApplication extends Application {
 
 		Platform.runLater(() -> {
 			try {
-				LOGGER.info("🎬 Starting playback of: " + videoFile.getAbsolutePath());
+				LOGGER.info("🎬 Starting playback of: " + source);
 
-				Media media = new Media(videoFile.toURI().toString());
+				Media media = new Media(source);
 				mediaPlayer = new MediaPlayer(media);
 				MediaView mediaView = new MediaView(mediaPlayer);
 
@@ -148,4 +238,13 @@ public class VideoClientApplication extends Application {
 			}
 		});
 	}
+
+	// Progress is reported on every chunk; print it at most once per interval, from whichever stream gets there first
+	private static void logProgress(long bytesWritten) {
+		long now = System.nanoTime();
+		long next = nextProgressLog.get();
+		if (now - next >= 0 && nextProgressLog.compareAndSet(next, now + PROGRESS_LOG_INTERVAL_NANOS)) {
+			LOGGER.info(String.format("📦 Received %.2f MB", bytesWritten / (1024.0 * 1024.0)));
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package ch.fortidemo.grpcvideoclient;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChannelPoolTest {
+
+	@AfterEach
+	void tearDown() {
+		ChannelPool.shutdownAll();
+	}
+
+	@Test
+	void buildsTheChannelsOfATargetOnceAndRotatesThroughThem() {
+		AtomicInteger built = new AtomicInteger();
+		// Channels connect lazily, so nothing needs to listen on the port
+		Supplier<ManagedChannelBuilder<?>> builder = () -> {
+			built.incrementAndGet();
+			return ManagedChannelBuilder.forAddress("localhost", 1).usePlaintext();
+		};
+
+		ChannelPool pool = ChannelPool.forTarget("plaintext://localhost:1", builder);
+		assertThat(ChannelPool.forTarget("plaintext://localhost:1", builder)).isSameAs(pool);
+		assertThat(built.get()).isEqualTo(pool.size());
+
+		Set<ManagedChannel> used = new HashSet<>();
+		for (int i = 0; i < 2 * pool.size(); i++) {
+			used.add(pool.next());
+		}
+		assertThat(used).hasSize(pool.size());
+		assertThat(ChannelPool.forTarget("tls://localhost:1", builder)).isNotSameAs(pool);
+	}
+}
@@ -0,0 +1,74 @@
+package ch.fortidemo.grpcvideoclient;
+
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkRingTest {
+
+	@Test
+	void handsChunksOverInOrderWithOneCreditPerFreeSlot() throws Exception {
+		ChunkRing ring = new ChunkRing(4, 16);
+		// Stands in for gRPC message requests: the producer only offers what the consumer has asked for
+		Semaphore credits = new Semaphore(ring.capacity());
+		int chunks = 20_000;
+		AtomicReference<Throwable> producerFailure = new AtomicReference<>();
+
+		Thread producer = new Thread(() -> {
+			try {
+				long offset = 0;
+				for (int i = 0; i < chunks; i++) {
+					credits.acquire();
+					byte[] data = new byte[1 + i % 40];
+					data[0] = (byte) i;
+					assertThat(ring.offer(ByteString.copyFrom(data), offset)).isTrue();
+					offset += data.length;
+				}
+				ring.close();
+			} catch (Throwable t) {
+				producerFailure.set(t);
+				ring.close();
+			}
+		});
+		producer.start();
+
+		long expectedOffset = 0;
+		int received = 0;
+		ByteBuffer chunk;
+		while ((chunk = ring.take()) != null) {
+			assertThat(ring.offset()).isEqualTo(expectedOffset);
+			assertThat(chunk.remaining()).isEqualTo(1 + received % 40);
+			assertThat(chunk.get(0)).isEqualTo((byte) received);
+			expectedOffset += chunk.remaining();
+			received++;
+			ring.release();
+			credits.release();
+		}
+		producer.join();
+
+		assertThat(producerFailure.get()).isNull();
+		assertThat(received).isEqualTo(chunks);
+		// Slots doubled until the largest chunk fit (16, 32, 64 bytes) and were reused from then on
+		assertThat(ring.getAllocatedBytes()).isEqualTo(4 * 64);
+	}
+
+	@Test
+	void refusesChunksBeyondItsCapacity() throws Exception {
+		ChunkRing ring = new ChunkRing(3, 8);
+		assertThat(ring.capacity()).isEqualTo(4);
+		for (int i = 0; i < 4; i++) {
+			assertThat(ring.offer(ByteString.copyFromUtf8("chunk"), i)).isTrue();
+		}
+		assertThat(ring.offer(ByteString.copyFromUtf8("chunk"), 4)).isFalse();
+
+		ring.take();
+		ring.release();
+		assertThat(ring.offer(ByteString.copyFromUtf8("chunk"), 4)).isTrue();
+		assertThat(ring.size()).isEqualTo(4);
+	}
+}
@@ -0,0 +1,231 @@
+package ch.fortidemo.grpcvideoclient;
+
+import ch.fortidemo.grpc.video.StreamHeader;
+import ch.fortidemo.grpc.video.VideoChunk;
+import ch.fortidemo.grpc.video.VideoRequest;
+import ch.fortidemo.grpc.video.VideoServiceGrpc;
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32C;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResumableDownloadTest {
+	private static final int CHUNK_SIZE = 1024;
+	private static final byte[] VIDEO = new byte[4 * CHUNK_SIZE];
+
+	static {
+		new Random(5).nextBytes(VIDEO);
+	}
+
+	@TempDir
+	Path cacheDir;
+
+	private final AtomicInteger calls = new AtomicInteger();
+	private Server server;
+	private ManagedChannel channel;
+
+	@AfterEach
+	void tearDown() {
+		channel.shutdownNow();
+		server.shutdownNow();
+	}
+
+	@Test
+	void resumesAfterTheLastWrittenByte() throws Exception {
+		List<Long> offsets = new CopyOnWriteArrayList<>();
+		VideoServiceGrpc.VideoServiceStub stub = serve(new VideoServiceGrpc.VideoServiceImplBase() {
+			@Override
+			public void streamVideo(VideoRequest request, StreamObserver<VideoChunk> responseObserver) {
+				offsets.add(request.getOffset());
+				boolean breakOff = calls.incrementAndGet() == 1;
+				for (int offset = (int) request.getOffset(); offset < VIDEO.length; offset += CHUNK_SIZE) {
+					if (breakOff && offset == 2 * CHUNK_SIZE) {
+						// The connection drops after two chunks
+						responseObserver.onError(Status.UNAVAILABLE.asRuntimeException());
+						return;
+					}
+					responseObserver.onNext(VideoChunk.newBuilder()
+							.setData(ByteString.copyFrom(VIDEO, offset, CHUNK_SIZE))
+							.setOffset(offset)
+							.build());
+				}
+				responseObserver.onCompleted();
+			}
+		});
+		File file = cacheDir.resolve("video.mp4").toFile();
+
+		CompletableFuture<String> outcome = new CompletableFuture<>();
+		new ResumableDownload(stub, "video.mp4", file, listener(outcome)).start();
+
+		assertThat(outcome.get(10, TimeUnit.SECONDS)).isEqualTo("completed");
+		// The second call asked only for what the first one had not written
+		assertThat(offsets).containsExactly(0L, 2L * CHUNK_SIZE);
+		assertThat(file).hasBinaryContent(VIDEO);
+	}
+
+	@Test
+	void fetchesAChunkThatFailedItsChecksumAgain() throws Exception {
+		VideoServiceGrpc.VideoServiceStub stub = start(MessageDigest.getInstance("SHA-256").digest(VIDEO));
+		VideoCache cache = new VideoCache(cacheDir, 1 << 20);
+
+		File file;
+		try (VideoCache.Entry entry = cache.open("server", "video.mp4")) {
+			assertThat(download(stub, entry)).isEqualTo("completed");
+			assertThat(entry.isComplete()).isTrue();
+			file = entry.getFile();
+		}
+		// The first call broke off at the bad chunk, the second one resumed there
+		assertThat(calls.get()).isEqualTo(2);
+		assertThat(file).hasBinaryContent(VIDEO);
+	}
+
+	@Test
+	void throwsAwayAFileWhoseDigestDoesNotMatch() throws Exception {
+		VideoServiceGrpc.VideoServiceStub stub = start(new byte[32]);
+		VideoCache cache = new VideoCache(cacheDir, 1 << 20);
+
+		try (VideoCache.Entry entry = cache.open("server", "video.mp4")) {
+			assertThat(download(stub, entry)).isEqualTo("failed");
+			assertThat(entry.getCachedBytes()).isZero();
+			assertThat(entry.isComplete()).isFalse();
+		}
+	}
+
+	@Test
+	void verifiesAFileWhoseMoovCameAhead() throws Exception {
+		VideoServiceGrpc.VideoServiceStub stub = startMoovFirst(MessageDigest.getInstance("SHA-256").digest(VIDEO));
+		VideoCache cache = new VideoCache(cacheDir, 1 << 20);
+
+		try (VideoCache.Entry entry = cache.open("server", "video.mp4")) {
+			assertThat(download(stub, entry)).isEqualTo("completed");
+			assertThat(entry.isComplete()).isTrue();
+			assertThat(entry.getFile()).hasBinaryContent(VIDEO);
+		}
+	}
+
+	@Test
+	void throwsAwayAFileWhoseMoovCameAheadAndWhoseDigestDoesNotMatch() throws Exception {
+		VideoServiceGrpc.VideoServiceStub stub = startMoovFirst(new byte[32]);
+		VideoCache cache = new VideoCache(cacheDir, 1 << 20);
+
+		try (VideoCache.Entry entry = cache.open("server", "video.mp4")) {
+			// Out of order is no reason to skip the check
+			assertThat(download(stub, entry)).isEqualTo("failed");
+			assertThat(entry.getCachedBytes()).isZero();
+		}
+	}
+
+	// Streams VIDEO with checksums, the second chunk of the first call with a wrong CRC32C
+	private VideoServiceGrpc.VideoServiceStub start(byte[] sha256) throws Exception {
+		return serve(new VideoServiceGrpc.VideoServiceImplBase() {
+			@Override
+			public void streamVideo(VideoRequest request, StreamObserver<VideoChunk> responseObserver) {
+				boolean corrupt = calls.incrementAndGet() == 1;
+				assertThat(request.getChecksums()).isTrue();
+				for (int offset = (int) request.getOffset(); offset < VIDEO.length; offset += CHUNK_SIZE) {
+					CRC32C crc = new CRC32C();
+					crc.update(VIDEO, offset, CHUNK_SIZE);
+					VideoChunk.Builder chunk = VideoChunk.newBuilder()
+							.setData(ByteString.copyFrom(VIDEO, offset, CHUNK_SIZE))
+							.setOffset(offset)
+							.setCrc32C((int) crc.getValue() ^ (corrupt && offset == CHUNK_SIZE ? 1 : 0));
+					if (offset == request.getOffset()) {
+						chunk.setHeader(StreamHeader.newBuilder()
+								.setTotalSize(VIDEO.length)
+								.setOffset(offset)
+								.setLength(VIDEO.length - offset)
+								.setEtag("v1"));
+					}
+					if (offset + CHUNK_SIZE == VIDEO.length) {
+						chunk.setFileSha256(ByteString.copyFrom(sha256));
+					}
+					responseObserver.onNext(chunk.build());
+				}
+				responseObserver.onCompleted();
+			}
+		});
+	}
+
+	// Streams VIDEO with its last chunk, the moov of a file that is not fast-start, right after the first one
+	private VideoServiceGrpc.VideoServiceStub startMoovFirst(byte[] sha256) throws Exception {
+		return serve(new VideoServiceGrpc.VideoServiceImplBase() {
+			@Override
+			public void streamVideo(VideoRequest request, StreamObserver<VideoChunk> responseObserver) {
+				assertThat(request.getMoovFirst()).isTrue();
+				int[] order = {0, 3 * CHUNK_SIZE, CHUNK_SIZE, 2 * CHUNK_SIZE};
+				for (int i = 0; i < order.length; i++) {
+					CRC32C crc = new CRC32C();
+					crc.update(VIDEO, order[i], CHUNK_SIZE);
+					VideoChunk.Builder chunk = VideoChunk.newBuilder()
+							.setData(ByteString.copyFrom(VIDEO, order[i], CHUNK_SIZE))
+							.setOffset(order[i])
+							.setCrc32C((int) crc.getValue());
+					if (i == 0) {
+						chunk.setHeader(StreamHeader.newBuilder()
+								.setTotalSize(VIDEO.length)
+								.setLength(VIDEO.length)
+								.setEtag("v1"));
+					}
+					if (i == order.length - 1) {
+						chunk.setFileSha256(ByteString.copyFrom(sha256));
+					}
+					responseObserver.onNext(chunk.build());
+				}
+				responseObserver.onCompleted();
+			}
+		});
+	}
+
+	private VideoServiceGrpc.VideoServiceStub serve(VideoServiceGrpc.VideoServiceImplBase service) throws Exception {
+		String name = InProcessServerBuilder.generateName();
+		server = InProcessServerBuilder.forName(name)
+				.addService(service)
+				.build()
+				.start();
+		channel = InProcessChannelBuilder.forName(name).build();
+		return VideoServiceGrpc.newStub(channel);
+	}
+
+	private static String download(VideoServiceGrpc.VideoServiceStub stub, VideoCache.Entry entry) throws Exception {
+		CompletableFuture<String> outcome = new CompletableFuture<>();
+		new ResumableDownload(stub, "video.mp4", entry, listener(outcome)).start();
+		return outcome.get(10, TimeUnit.SECONDS);
+	}
+
+	private static ResumableDownload.Listener listener(CompletableFuture<String> outcome) {
+		return new ResumableDownload.Listener() {
+			@Override
+			public void onProgress(long bytesWritten) {
+			}
+
+			@Override
+			public void onCompleted(File file) {
+				outcome.complete("completed");
+			}
+
+			@Override
+			public void onFailed(Throwable t) {
+				outcome.complete("failed");
+			}
+		};
+	}
+}
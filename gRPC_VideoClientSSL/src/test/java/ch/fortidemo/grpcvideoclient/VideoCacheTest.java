@@ -0,0 +1,149 @@
+package ch.fortidemo.grpcvideoclient;
+
+import ch.fortidemo.grpc.video.StreamHeader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VideoCacheTest {
+
+	@TempDir
+	Path cacheDir;
+
+	@Test
+	void continuesAPartialCopyUntilTheServerHasAnotherVersion() throws Exception {
+		VideoCache cache = new VideoCache(cacheDir, 1024);
+		try (VideoCache.Entry entry = cache.open("tls://server:9090", "video.mp4")) {
+			assertThat(entry.getEtag()).isNull();
+			entry.onHeader(header("a", 0, 10));
+			entry.write(ByteBuffer.wrap(new byte[4]), 0);
+			assertThatThrownBy(() -> cache.open("tls://server:9090", "video.mp4")).isInstanceOf(IOException.class);
+		}
+
+		try (VideoCache.Entry entry = cache.open("tls://server:9090", "video.mp4")) {
+			assertThat(entry.getCachedBytes()).isEqualTo(4);
+			assertThat(entry.getEtag()).isEqualTo("a");
+			assertThat(entry.isComplete()).isFalse();
+			// Asked for byte 4 onwards of "a", the server sends all of "b" instead
+			entry.onHeader(header("b", 0, 6));
+			assertThat(entry.getCachedBytes()).isZero();
+			entry.write(ByteBuffer.wrap(new byte[6]), 0);
+			assertThat(entry.isComplete()).isTrue();
+		}
+
+		try (VideoCache.Entry entry = cache.open("tls://server:9090", "video.mp4")) {
+			assertThat(entry.isComplete()).isTrue();
+			assertThat(entry.getEtag()).isEqualTo("b");
+			// Same name on another server is another entry
+			assertThat(cache.open("plaintext://server:9090", "video.mp4").getCachedBytes()).isZero();
+		}
+		// The properties files were replaced whole, nothing half-written is left over
+		assertThat(cacheDir).isDirectoryNotContaining("glob:**.tmp");
+	}
+
+	@Test
+	void evictsTheLeastRecentlyUsedCopiesOverTheCap() throws Exception {
+		VideoCache cache = new VideoCache(cacheDir, 10);
+		for (String name : new String[]{"first.mp4", "second.mp4"}) {
+			try (VideoCache.Entry entry = cache.open("server", name)) {
+				entry.onHeader(header(name, 0, 6));
+				entry.write(ByteBuffer.wrap(new byte[6]), 0);
+			}
+			Thread.sleep(20);
+		}
+
+		try (VideoCache.Entry first = cache.open("server", "first.mp4");
+			 VideoCache.Entry second = cache.open("server", "second.mp4")) {
+			assertThat(first.getCachedBytes()).isZero();
+			assertThat(second.isComplete()).isTrue();
+		}
+	}
+
+	@Test
+	void countsAMoovSentAheadOnlyOnceTheBytesBeforeItAreIn() throws Exception {
+		VideoCache cache = new VideoCache(cacheDir, 1024);
+		try (VideoCache.Entry entry = cache.open("server", "video.mp4")) {
+			entry.onHeader(header("a", 0, 10));
+			entry.write(ByteBuffer.wrap(new byte[2]), 0);
+			entry.write(ByteBuffer.wrap(new byte[3]), 7);
+			assertThat(entry.getCachedBytes()).isEqualTo(2);
+			entry.write(ByteBuffer.wrap(new byte[3]), 2);
+			// Stopped one byte short of the moov
+		}
+
+		try (VideoCache.Entry entry = cache.open("server", "video.mp4")) {
+			// The moov is kept but does not count yet, it may come again with the rest
+			assertThat(entry.getFile()).hasSize(10);
+			assertThat(entry.getCachedBytes()).isEqualTo(5);
+			assertThat(entry.isComplete()).isFalse();
+			entry.onHeader(header("a", 5, 10));
+			entry.write(ByteBuffer.wrap(new byte[3]), 7);
+			entry.write(ByteBuffer.wrap(new byte[2]), 5);
+			assertThat(entry.getCachedBytes()).isEqualTo(10);
+			assertThat(entry.isComplete()).isTrue();
+		}
+	}
+
+	@Test
+	void trustsOnlyTheSavedLengthOfAnEntryThatWasNeverClosed() throws Exception {
+		VideoCache.Entry abandoned = new VideoCache(cacheDir, 1024).open("server", "video.mp4");
+		abandoned.onHeader(header("a", 0, 10));
+		abandoned.write(ByteBuffer.wrap(new byte[4]), 0);
+
+		// The client was killed before the next save, as far as the properties file knows nothing arrived
+		try (VideoCache.Entry entry = new VideoCache(cacheDir, 1024).open("server", "video.mp4")) {
+			assertThat(entry.getCachedBytes()).isZero();
+			assertThat(entry.getFile()).isEmpty();
+			assertThat(entry.getEtag()).isEqualTo("a");
+		} finally {
+			abandoned.close();
+		}
+	}
+
+	@Test
+	void doesNotTakeAFileFilledUpByAMoovAheadForCompleteAfterACrash() throws Exception {
+		VideoCache.Entry abandoned = new VideoCache(cacheDir, 1024).open("server", "video.mp4");
+		abandoned.onHeader(header("a", 0, 10));
+		abandoned.write(ByteBuffer.wrap(new byte[2]), 0);
+		// The moov at the end makes the data file full size, with a hole before it
+		abandoned.write(ByteBuffer.wrap(new byte[3]), 7);
+		assertThat(abandoned.getFile()).hasSize(10);
+
+		try (VideoCache.Entry entry = new VideoCache(cacheDir, 1024).open("server", "video.mp4")) {
+			assertThat(entry.isComplete()).isFalse();
+			assertThat(entry.getCachedBytes()).isZero();
+			assertThat(entry.getFile()).isEmpty();
+		} finally {
+			abandoned.close();
+		}
+	}
+
+	@Test
+	void closesTheOpenEntriesAtExit() throws Exception {
+		VideoCache.Entry entry = new VideoCache(cacheDir, 1024).open("server", "video.mp4");
+		entry.onHeader(header("a", 0, 10));
+		entry.write(ByteBuffer.wrap(new byte[4]), 0);
+
+		// What the shutdown hook runs
+		VideoCache.closeAll();
+
+		try (VideoCache.Entry reopened = new VideoCache(cacheDir, 1024).open("server", "video.mp4")) {
+			assertThat(reopened.getCachedBytes()).isEqualTo(4);
+		}
+	}
+
+	private static StreamHeader header(String etag, long offset, long totalSize) {
+		return StreamHeader.newBuilder()
+				.setEtag(etag)
+				.setOffset(offset)
+				.setTotalSize(totalSize)
+				.setLength(totalSize - offset)
+				.build();
+	}
+}
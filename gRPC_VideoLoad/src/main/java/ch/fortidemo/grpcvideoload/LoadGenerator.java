@@ -0,0 +1,185 @@
+package ch.fortidemo.grpcvideoload;
+
+import ch.fortidemo.grpc.video.VideoChunk;
+import ch.fortidemo.grpc.video.VideoRequest;
+import ch.fortidemo.grpc.video.VideoServiceGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.netty.shaded.io.grpc.netty.GrpcSslContexts;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslContextBuilder;
+import io.grpc.netty.shaded.io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.grpc.stub.StreamObserver;
+
+import javax.net.ssl.SSLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+// Headless load generator: opens many concurrent StreamVideo calls spread round-robin over a few channels,
+// discards or CRC32C-checks the bytes, and reports the throughput plus time-to-first-chunk and completion
+// percentiles. The callbacks run on the Netty event loops, so thousands of streams need no thread each.
+// With --duration every stream starts over as soon as it is done until the time is up, for a steady load.
+//
+//   java -jar target/load-generator.jar --host=localhost --port=9090 --streams=2000 --channels=16 --checksum
+//   java -jar target/load-generator.jar --port=9443 --tls --ca=ca.crt --authority=grpc-video-server-local
+public class LoadGenerator {
+    private static final long RETRY_DELAY_MILLIS = 100;
+
+    private final LoadOptions options;
+    private final LoadReport report = new LoadReport();
+    private final VideoRequest request;
+    private final List<ManagedChannel> channels = new ArrayList<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("load-scheduler").daemon().factory());
+    private long deadline;
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(LoadOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        LoadReport report = new LoadGenerator(options).run();
+        report.print(System.out, options);
+        System.exit(report.isClean() ? 0 : 1);
+    }
+
+    LoadGenerator(LoadOptions options) {
+        this.options = options;
+        this.request = VideoRequest.newBuilder().setFilename(options.filename).build();
+    }
+
+    LoadReport run() throws SSLException, InterruptedException {
+        for (int i = 0; i < options.channels; i++) {
+            channels.add(newChannel());
+        }
+        System.out.printf("Opening %d streams for %s over %d channels to %s:%d%n",
+                options.streams, options.filename, options.channels, options.host, options.port);
+
+        CountDownLatch done = new CountDownLatch(options.streams);
+        long start = System.nanoTime();
+        deadline = start + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+        long rampUpNanos = TimeUnit.SECONDS.toNanos(options.rampUpSeconds);
+        scheduler.scheduleAtFixedRate(new Progress(start), 1, 1, TimeUnit.SECONDS);
+        try {
+            for (int i = 0; i < options.streams; i++) {
+                VideoServiceGrpc.VideoServiceStub stub = VideoServiceGrpc.newStub(channels.get(i % channels.size()));
+                long delay = rampUpNanos * i / options.streams;
+                if (delay == 0) {
+                    startStream(stub, done);
+                } else {
+                    scheduler.schedule(() -> startStream(stub, done), delay, TimeUnit.NANOSECONDS);
+                }
+            }
+            done.await();
+            report.finish(System.nanoTime() - start);
+        } finally {
+            scheduler.shutdownNow();
+            for (ManagedChannel channel : channels) {
+                channel.shutdownNow();
+            }
+            for (ManagedChannel channel : channels) {
+                channel.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        }
+        return report;
+    }
+
+    private ManagedChannel newChannel() throws SSLException {
+        NettyChannelBuilder builder = NettyChannelBuilder.forAddress(options.host, options.port)
+                .directExecutor();
+        if (!options.tls) {
+            return builder.usePlaintext().build();
+        }
+        SslContextBuilder ssl = GrpcSslContexts.forClient();
+        if (options.insecure) {
+            ssl.trustManager(InsecureTrustManagerFactory.INSTANCE);
+        } else if (options.ca != null) {
+            ssl.trustManager(options.ca);
+        }
+        if (options.authority != null) {
+            builder.overrideAuthority(options.authority);
+        }
+        return builder.sslContext(ssl.build()).build();
+    }
+
+    private void startStream(VideoServiceGrpc.VideoServiceStub stub, CountDownLatch done) {
+        long requested = System.nanoTime();
+        report.started();
+        stub.streamVideo(request, new StreamObserver<>() {
+            private final CRC32C crc = options.checksum ? new CRC32C() : null;
+            private boolean first = true;
+            private long expectedOffset;
+
+            @Override
+            public void onNext(VideoChunk chunk) {
+                if (first) {
+                    report.firstChunk(System.nanoTime() - requested);
+                    first = false;
+                }
+                report.chunk(chunk.getData().size());
+                if (crc != null) {
+                    if (chunk.getOffset() != expectedOffset) {
+                        report.outOfOrder();
+                    }
+                    crc.update(chunk.getData().asReadOnlyByteBuffer());
+                    expectedOffset = chunk.getOffset() + chunk.getData().size();
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                report.failed(Status.fromThrowable(t).getCode());
+                // Back off a little, a server that turns streams away would otherwise be hammered in a loop
+                if (keepGoing()) {
+                    scheduler.schedule(() -> startStream(stub, done), RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                } else {
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public void onCompleted() {
+                report.completed(System.nanoTime() - requested, crc == null ? -1 : crc.getValue());
+                if (keepGoing()) {
+                    startStream(stub, done);
+                } else {
+                    done.countDown();
+                }
+            }
+        });
+    }
+
+    private boolean keepGoing() {
+        return System.nanoTime() - deadline < 0;
+    }
+
+    // One line per second while the load runs
+    private class Progress implements Runnable {
+        private final long start;
+        private long lastBytes;
+
+        Progress(long start) {
+            this.start = start;
+        }
+
+        @Override
+        public void run() {
+            long bytes = report.getBytes();
+            System.out.printf("%5ds  active %6d  completed %8d  failed %6d  %10.1f MB/s%n",
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), report.getActive(),
+                    report.getCompleted(), report.getFailed(), (bytes - lastBytes) / (1024.0 * 1024.0));
+            lastBytes = bytes;
+        }
+    }
+}
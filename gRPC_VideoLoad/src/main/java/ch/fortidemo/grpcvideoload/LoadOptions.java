@@ -0,0 +1,88 @@
+package ch.fortidemo.grpcvideoload;
+
+import java.io.File;
+
+// Command line of the load generator: --name=value pairs, flags without a value
+public class LoadOptions {
+    static final String USAGE = """
+            usage: java -jar load-generator.jar [options]
+              --host=localhost        server to load
+              --port=9090
+              --streams=1000          concurrent StreamVideo calls
+              --channels=8            connections the streams are spread over, round-robin
+              --file=video.mp4        video every stream downloads
+              --checksum              CRC32C every stream and check that they all agree, else the data is discarded
+              --duration=0            seconds to keep every stream busy with new downloads, 0 downloads once
+              --ramp-up=0             seconds over which the streams are opened
+              --tls                   connect with TLS, trusting --ca or the JDK's default CAs
+              --ca=ca.crt             PEM certificate of the CA that signed the server certificate
+              --authority=NAME        host name to verify instead of --host, e.g. grpc-video-server-local
+              --insecure              TLS without verifying the server certificate
+            """;
+
+    String host = "localhost";
+    int port = 9090;
+    int streams = 1000;
+    int channels = 8;
+    String filename = "video.mp4";
+    boolean checksum;
+    int durationSeconds;
+    int rampUpSeconds;
+    boolean tls;
+    File ca;
+    String authority;
+    boolean insecure;
+
+    static LoadOptions parse(String[] args) {
+        LoadOptions options = new LoadOptions();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + arg);
+            }
+            int equals = arg.indexOf('=');
+            String name = arg.substring(2, equals < 0 ? arg.length() : equals);
+            String value = equals < 0 ? null : arg.substring(equals + 1);
+            switch (name) {
+                case "host" -> options.host = required(name, value);
+                case "port" -> options.port = number(name, value, 1);
+                case "streams" -> options.streams = number(name, value, 1);
+                case "channels" -> options.channels = number(name, value, 1);
+                case "file" -> options.filename = required(name, value);
+                case "checksum" -> options.checksum = true;
+                case "duration" -> options.durationSeconds = number(name, value, 0);
+                case "ramp-up" -> options.rampUpSeconds = number(name, value, 0);
+                case "tls" -> options.tls = true;
+                case "ca" -> options.ca = new File(required(name, value));
+                case "authority" -> options.authority = required(name, value);
+                case "insecure" -> options.insecure = true;
+                default -> throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+        if ((options.ca != null || options.authority != null || options.insecure) && !options.tls) {
+            throw new IllegalArgumentException("--ca, --authority and --insecure need --tls");
+        }
+        if (options.ca != null && !options.ca.isFile()) {
+            throw new IllegalArgumentException("CA certificate not found: " + options.ca);
+        }
+        return options;
+    }
+
+    private static String required(String name, String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("--" + name + " needs a value");
+        }
+        return value;
+    }
+
+    private static int number(String name, String value, int min) {
+        try {
+            int number = Integer.parseInt(required(name, value));
+            if (number >= min) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("--" + name + " must be a number of at least " + min);
+    }
+}
@@ -0,0 +1,129 @@
+package ch.fortidemo.grpcvideoload;
+
+import io.grpc.Status;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// What the streams saw, recorded from every event loop at once. Latencies are kept in microseconds, from
+// sending the request to the first chunk and to the end of the stream, with 3 significant digits.
+public class LoadReport {
+    private final Histogram firstChunk = new ConcurrentHistogram(3);
+    private final Histogram completion = new ConcurrentHistogram(3);
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder chunks = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final AtomicInteger active = new AtomicInteger();
+    private final Map<Status.Code, LongAdder> failures = new ConcurrentHashMap<>();
+    private final Set<Long> checksums = ConcurrentHashMap.newKeySet();
+    private final LongAdder outOfOrder = new LongAdder();
+    private volatile long elapsedNanos;
+
+    void started() {
+        active.incrementAndGet();
+    }
+
+    void firstChunk(long nanos) {
+        firstChunk.recordValue(nanos / 1000);
+    }
+
+    void chunk(int size) {
+        chunks.increment();
+        bytes.add(size);
+    }
+
+    void outOfOrder() {
+        outOfOrder.increment();
+    }
+
+    // checksum is -1 when the data was discarded
+    void completed(long nanos, long checksum) {
+        active.decrementAndGet();
+        completed.increment();
+        completion.recordValue(nanos / 1000);
+        if (checksum >= 0) {
+            checksums.add(checksum);
+        }
+    }
+
+    void failed(Status.Code code) {
+        active.decrementAndGet();
+        failures.computeIfAbsent(code, c -> new LongAdder()).increment();
+    }
+
+    void finish(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getFailed() {
+        return failures.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public Set<Long> getChecksums() {
+        return checksums;
+    }
+
+    public Histogram getFirstChunk() {
+        return firstChunk;
+    }
+
+    public Histogram getCompletion() {
+        return completion;
+    }
+
+    // No failed stream and, when checked, every stream got the same bytes
+    public boolean isClean() {
+        return getFailed() == 0 && checksums.size() <= 1 && outOfOrder.sum() == 0;
+    }
+
+    void print(PrintStream out, LoadOptions options) {
+        double seconds = elapsedNanos / 1e9;
+        double megabytes = bytes.sum() / (1024.0 * 1024.0);
+        out.println();
+        out.printf("streams      %d over %d %s channels to %s:%d, %d completed, %d failed%n",
+                options.streams, options.channels, options.tls ? "TLS" : "plaintext", options.host, options.port,
+                completed.sum(), getFailed());
+        out.printf("data         %.1f MB in %d chunks, %.2f s, %.1f MB/s%n",
+                megabytes, chunks.sum(), seconds, megabytes / seconds);
+        printLatency(out, "first chunk", firstChunk);
+        printLatency(out, "completion", completion);
+        if (options.checksum) {
+            out.printf("checksum     %s%n", checksums.size() == 1
+                    ? String.format("CRC32C %08x on every completed stream", checksums.iterator().next())
+                    : checksums.size() + " different CRC32C values, the streams did not all get the same bytes");
+            if (outOfOrder.sum() > 0) {
+                out.printf("             %d chunks arrived out of order%n", outOfOrder.sum());
+            }
+        }
+        failures.forEach((code, count) -> out.printf("failed       %s x %d%n", code, count.sum()));
+    }
+
+    private static void printLatency(PrintStream out, String name, Histogram histogram) {
+        if (histogram.getTotalCount() == 0) {
+            out.printf("%-12s none%n", name);
+            return;
+        }
+        out.printf("%-12s p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f ms%n", name,
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+    }
+}
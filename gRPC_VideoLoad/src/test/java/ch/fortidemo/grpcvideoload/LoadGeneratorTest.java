@@ -0,0 +1,87 @@
+package ch.fortidemo.grpcvideoload;
+
+import ch.fortidemo.grpc.video.VideoChunk;
+import ch.fortidemo.grpc.video.VideoRequest;
+import ch.fortidemo.grpc.video.VideoServiceGrpc;
+import com.google.protobuf.ByteString;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoadGeneratorTest {
+
+    private static final int CHUNK_SIZE = 4096;
+    private static final byte[] VIDEO = new byte[16 * CHUNK_SIZE];
+
+    static {
+        new Random(42).nextBytes(VIDEO);
+    }
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private Server server;
+
+    // Streams VIDEO in fixed chunks; every third call is turned away when busy is set
+    private Server start(boolean busy) throws Exception {
+        server = NettyServerBuilder.forPort(0)
+                .addService(new VideoServiceGrpc.VideoServiceImplBase() {
+                    @Override
+                    public void streamVideo(VideoRequest request, StreamObserver<VideoChunk> responseObserver) {
+                        if (busy && calls.incrementAndGet() % 3 == 0) {
+                            responseObserver.onError(Status.RESOURCE_EXHAUSTED.asRuntimeException());
+                            return;
+                        }
+                        for (int offset = 0; offset < VIDEO.length; offset += CHUNK_SIZE) {
+                            responseObserver.onNext(VideoChunk.newBuilder()
+                                    .setOffset(offset)
+                                    .setData(ByteString.copyFrom(VIDEO, offset, CHUNK_SIZE))
+                                    .build());
+                        }
+                        responseObserver.onCompleted();
+                    }
+                })
+                .build()
+                .start();
+        return server;
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.shutdownNow();
+    }
+
+    @Test
+    void checksumsEveryStreamAndRecordsItsLatencies() throws Exception {
+        LoadOptions options = LoadOptions.parse(new String[]{
+                "--port=" + start(false).getPort(), "--streams=300", "--channels=4", "--checksum"});
+
+        LoadReport report = new LoadGenerator(options).run();
+
+        assertThat(report.getCompleted()).isEqualTo(300);
+        assertThat(report.getBytes()).isEqualTo(300L * VIDEO.length);
+        assertThat(report.getChecksums()).hasSize(1);
+        assertThat(report.getFirstChunk().getTotalCount()).isEqualTo(300);
+        assertThat(report.getCompletion().getTotalCount()).isEqualTo(300);
+        assertThat(report.getCompletion().getMinValue()).isGreaterThanOrEqualTo(report.getFirstChunk().getMinValue());
+        assertThat(report.isClean()).isTrue();
+    }
+
+    @Test
+    void countsRejectedStreamsAsFailures() throws Exception {
+        LoadOptions options = LoadOptions.parse(new String[]{"--port=" + start(true).getPort(), "--streams=30"});
+
+        LoadReport report = new LoadGenerator(options).run();
+
+        assertThat(report.getFailed()).isEqualTo(10);
+        assertThat(report.getCompleted()).isEqualTo(20);
+        assertThat(report.getChecksums()).isEmpty();
+        assertThat(report.isClean()).isFalse();
+    }
+}
@@ -0,0 +1,124 @@
+package ch.fortidemo.grpcvideoserver;
+
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Caps the video streams served at once across all connections. A stream over the limit is closed with
+// RESOURCE_EXHAUSTED before its handler runs, so a burst of viewers costs one status frame each instead of
+// slowing down everyone already watching. Unary calls such as the catalog listing are cheap and always admitted.
+// While draining, every new call gets UNAVAILABLE so clients retry on another replica.
+// The limit can be changed at runtime over JMX (ch.fortidemo.grpcvideoserver:type=AdmissionControl).
+@Component
+@ManagedResource(objectName = "ch.fortidemo.grpcvideoserver:type=AdmissionControl")
+public class AdmissionControlInterceptor implements ServerInterceptor {
+    private volatile int maxConcurrentStreams;
+    private volatile boolean draining;
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    private final Counter rejectedAtLimit;
+    private final Counter rejectedDraining;
+
+    @Autowired
+    public AdmissionControlInterceptor(GrpcServerProperties properties, MeterRegistry registry) {
+        this(properties.getMaxConcurrentStreams(), registry);
+    }
+
+    // maxConcurrentStreams 0 = unlimited
+    public AdmissionControlInterceptor(int maxConcurrentStreams, MeterRegistry registry) {
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        Gauge.builder("grpc.server.admission.streams", activeStreams, AtomicInteger::get)
+                .description("Video streams admitted and not yet finished")
+                .register(registry);
+        this.rejectedAtLimit = Counter.builder("grpc.server.admission.rejected")
+                .tag("reason", "limit")
+                .register(registry);
+        this.rejectedDraining = Counter.builder("grpc.server.admission.rejected")
+                .tag("reason", "draining")
+                .register(registry);
+    }
+
+    @ManagedAttribute(description = "Maximum concurrent video streams, 0 = unlimited")
+    public int getMaxConcurrentStreams() {
+        return maxConcurrentStreams;
+    }
+
+    @ManagedAttribute
+    public void setMaxConcurrentStreams(int maxConcurrentStreams) {
+        this.maxConcurrentStreams = maxConcurrentStreams;
+    }
+
+    @ManagedAttribute(description = "Video streams currently admitted")
+    public int getActiveStreams() {
+        return activeStreams.get();
+    }
+
+    @ManagedAttribute(description = "New calls are refused while the server drains")
+    public boolean isDraining() {
+        return draining;
+    }
+
+    public void startDraining() {
+        draining = true;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        if (draining) {
+            rejectedDraining.increment();
+            return reject(call, Status.UNAVAILABLE.withDescription("Server is shutting down, retry on another instance"));
+        }
+        if (call.getMethodDescriptor().getType() != MethodDescriptor.MethodType.SERVER_STREAMING) {
+            return next.startCall(call, headers);
+        }
+
+        int limit = maxConcurrentStreams;
+        if (activeStreams.incrementAndGet() > limit && limit > 0) {
+            activeStreams.decrementAndGet();
+            rejectedAtLimit.increment();
+            return reject(call, Status.RESOURCE_EXHAUSTED.withDescription("Too many concurrent video streams (" + limit + ")"));
+        }
+
+        // Released on close, or on cancel when the client goes away first
+        AtomicBoolean released = new AtomicBoolean();
+        ServerCall<ReqT, RespT> admittedCall = new ForwardingServerCall.SimpleForwardingServerCall<>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                if (released.compareAndSet(false, true)) {
+                    activeStreams.decrementAndGet();
+                }
+                super.close(status, trailers);
+            }
+        };
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(next.startCall(admittedCall, headers)) {
+            @Override
+            public void onCancel() {
+                if (released.compareAndSet(false, true)) {
+                    activeStreams.decrementAndGet();
+                }
+                super.onCancel();
+            }
+        };
+    }
+
+    private static <ReqT, RespT> ServerCall.Listener<ReqT> reject(ServerCall<ReqT, RespT> call, Status status) {
+        call.close(status, new Metadata());
+        return new ServerCall.Listener<>() {
+        };
+    }
+}
@@ -0,0 +1,136 @@
+package ch.fortidemo.grpcvideoserver;
+
+import java.util.concurrent.TimeUnit;
+
+// Chooses the chunk size of one stream between video.min-chunk-size and video.max-chunk-size. After every
+// measurement window it aims for a chunk that drains in about TARGET_CHUNK_TIME at the observed bytes/s,
+// so fast links get fewer, larger messages and slow links small ones that do not sit in buffers. If the
+// transport stays not-ready longer than MAX_READY_LATENCY before calling onReady again, it shrinks regardless.
+// The size moves by at most a factor of two per window so one noisy sample cannot swing it.
+public class ChunkSizer {
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long TARGET_CHUNK_TIME_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long MAX_READY_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final int initialSize;
+    private final int minSize;
+    private final int maxSize;
+    private final long startNanos;
+    private int size;
+
+    private long windowStart;
+    private long windowBytes;
+    private int windowStalls;
+    private long windowStallNanos;
+    private long blockedSince = -1;
+
+    private int smallest;
+    private int largest;
+    private int adjustments;
+    private long totalBytes;
+    private long stalls;
+    private long stallNanos;
+
+    public ChunkSizer(int initialSize, int minSize, int maxSize, long now) {
+        this.minSize = Math.max(1, minSize);
+        this.maxSize = Math.max(this.minSize, maxSize);
+        this.initialSize = Math.clamp(initialSize, this.minSize, this.maxSize);
+        this.size = this.initialSize;
+        this.smallest = size;
+        this.largest = size;
+        this.startNanos = now;
+        this.windowStart = now;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getInitialSize() {
+        return initialSize;
+    }
+
+    // The transport refused more data; the time until onReady() is the ready latency
+    public void onBlocked(long now) {
+        if (blockedSince < 0) {
+            blockedSince = now;
+        }
+    }
+
+    public void onReady(long now) {
+        if (blockedSince >= 0) {
+            long latency = now - blockedSince;
+            blockedSince = -1;
+            windowStalls++;
+            windowStallNanos += latency;
+            stalls++;
+            stallNanos += latency;
+        }
+    }
+
+    public void onSent(int bytes, long now) {
+        windowBytes += bytes;
+        totalBytes += bytes;
+        if (now - windowStart >= WINDOW_NANOS) {
+            adjust(now);
+        }
+    }
+
+    private void adjust(long now) {
+        long elapsed = now - windowStart;
+        int next = size;
+        if (windowStalls > 0 && windowStallNanos / windowStalls > MAX_READY_LATENCY_NANOS) {
+            next = size / 2;
+        } else {
+            double bytesPerSecond = windowBytes * 1e9 / elapsed;
+            double target = bytesPerSecond * TARGET_CHUNK_TIME_NANOS / 1e9;
+            if (target >= 2.0 * size) {
+                next = size * 2;
+            } else if (target < size / 2.0) {
+                next = size / 2;
+            }
+        }
+        next = Math.clamp(next, minSize, maxSize);
+        if (next != size) {
+            size = next;
+            adjustments++;
+            smallest = Math.min(smallest, size);
+            largest = Math.max(largest, size);
+        }
+
+        windowStart = now;
+        windowBytes = 0;
+        windowStalls = 0;
+        windowStallNanos = 0;
+    }
+
+    public int getSmallest() {
+        return smallest;
+    }
+
+    public int getLargest() {
+        return largest;
+    }
+
+    public int getAdjustments() {
+        return adjustments;
+    }
+
+    public long getStalls() {
+        return stalls;
+    }
+
+    public double getAverageReadyLatencyMillis() {
+        return stalls == 0 ? 0 : stallNanos / (stalls * 1_000_000.0);
+    }
+
+    public double getMegabytesPerSecond(long now) {
+        return now == startNanos ? 0 : totalBytes * 1e9 / ((now - startNanos) * 1024.0 * 1024.0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("chunk=%d KB (%d-%d KB, %d adjustments), stalls=%d, ready latency=%.1f ms",
+                size / 1024, smallest / 1024, largest / 1024, adjustments, stalls, getAverageReadyLatencyMillis());
+    }
+}
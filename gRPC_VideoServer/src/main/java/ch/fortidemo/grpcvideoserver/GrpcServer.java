@@ -1,7 +1,10 @@
 package ch.fortidemo.grpcvideoserver;
 
 import io.grpc.Server;
-import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.ServerInterceptors;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
@@ -11,31 +14,70 @@ import java.util.concurrent.TimeUnit;
 public class GrpcServer {
 
     private final Server server;
+    private final NettyServerFactory serverFactory;
+    private final AdmissionControlInterceptor admissionControl;
+    private final GrpcServerProperties properties;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public GrpcServer(VideoServiceImpl videoService) {
-        this.server = NettyServerBuilder.forPort(9090)
-                .addService(videoService)
-                .maxInboundMessageSize(10 * 1024 * 1024) // Limit max request size to 10MB
-                .flowControlWindow(16 * 1024 * 1024) // Optimize memory for large streaming
-                .permitKeepAliveWithoutCalls(true)
-                .permitKeepAliveTime(10, TimeUnit.SECONDS)
+    public GrpcServer(VideoServiceImpl videoService, MetricsServerInterceptor metricsInterceptor,
+                      AdmissionControlInterceptor admissionControl, BandwidthShaper bandwidthShaper,
+                      ResponseCompression responseCompression, NettyServerFactory serverFactory,
+                      GrpcServerProperties properties, ApplicationEventPublisher eventPublisher) {
+        // Transport, event loops, flow control and limits come from grpc.server.*
+        this.serverFactory = serverFactory;
+        this.admissionControl = admissionControl;
+        this.properties = properties;
+        this.eventPublisher = eventPublisher;
+        // Metrics see every call, including refused ones; the shaper then notes the client
+        this.server = serverFactory.newServerBuilder()
+                .addService(ServerInterceptors.intercept(videoService, bandwidthShaper, admissionControl,
+                        metricsInterceptor))
+                .compressorRegistry(responseCompression.getCompressorRegistry())
                 .build();
     }
 
     public void start() throws IOException, InterruptedException {
-        System.out.println("✅ gRPC Video Server is running on port 9090...");
+        System.out.println("✅ gRPC Video Server is running on port " + properties.getPort() + "...");
         server.start();
+        // Spring only marks the app ready after this runner returns, which it never does
+        setReadiness(ReadinessState.ACCEPTING_TRAFFIC);
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("🔻 Shutting down gRPC server...");
-            try {
-                server.shutdown().awaitTermination(30, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+            stop();
+            serverFactory.shutdown();
         }));
 
         // ✅ Keep the server running
         server.awaitTermination();
     }
+
+    // Drain: fail the readiness probe, refuse new calls, send GOAWAY and give active streams the drain timeout
+    // to finish before the rest are cancelled
+    public void stop() {
+        setReadiness(ReadinessState.REFUSING_TRAFFIC);
+        admissionControl.startDraining();
+        server.shutdown();
+        System.out.printf("🚰 Draining %d active video streams for up to %ds...%n",
+                admissionControl.getActiveStreams(), properties.getDrainTimeout().toSeconds());
+        try {
+            if (!server.awaitTermination(properties.getDrainTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                System.out.println("⏱️ Drain timeout reached, cancelling " + admissionControl.getActiveStreams()
+                        + " remaining streams");
+                server.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            server.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // The shutdown hook races with Spring closing the context, which may already have gone
+    private void setReadiness(ReadinessState state) {
+        try {
+            AvailabilityChangeEvent.publish(eventPublisher, this, state);
+        } catch (RuntimeException e) {
+            System.err.println("⚠️ Could not publish readiness " + state + ": " + e.getMessage());
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,53 @@
+package ch.fortidemo.grpcvideoserver;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class MappedVideoFile {
+    // FileChannel.map() is limited to 2 GB per mapping, so large files are mapped in regions
+    private static final long REGION_SIZE = 1L << 30; // 1 GB
+
+    private final MappedByteBuffer[] regions;
+    private final long size;
+
+    private MappedVideoFile(MappedByteBuffer[] regions, long size) {
+        this.regions = regions;
+        this.size = size;
+    }
+
+    public static MappedVideoFile map(FileChannel channel) throws IOException {
+        long size = channel.size();
+        MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((size + REGION_SIZE - 1) / REGION_SIZE)];
+        for (int i = 0; i < regions.length; i++) {
+            long position = i * REGION_SIZE;
+            regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(REGION_SIZE, size - position));
+        }
+        // The mapping stays valid after the channel is closed
+        return new MappedVideoFile(regions, size);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    // Returns [offset, offset + length) as a view of the mapping, nothing is copied onto the heap
+    public ByteString slice(long offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > size) {
+            throw new IndexOutOfBoundsException("Slice [" + offset + ", " + (offset + length) + ") outside file of " + size + " bytes");
+        }
+        int region = (int) (offset / REGION_SIZE);
+        int position = (int) (offset % REGION_SIZE);
+        int inRegion = (int) Math.min(length, REGION_SIZE - position);
+
+        ByteString data = UnsafeByteOperations.unsafeWrap(regions[region].slice(position, inRegion));
+        if (inRegion < length) {
+            // Chunk straddles two regions: join both views as a rope instead of copying
+            data = data.concat(slice(offset + inRegion, length - inRegion));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,116 @@
+package ch.fortidemo.grpcvideoserver;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Per-method gRPC server metrics, published on /actuator/prometheus:
+//   grpc_server_calls_total{method,status}, grpc_server_streams_active{method}, grpc_server_sent_bytes_total{method},
+//   grpc_server_first_message_seconds{method} (time to first chunk) and grpc_server_call_duration_seconds{method,status}.
+// Meters that do not depend on the status are looked up once per method, so a sent message costs one counter add.
+@Component
+public class MetricsServerInterceptor implements ServerInterceptor {
+    private final MeterRegistry registry;
+    private final ConcurrentHashMap<String, MethodMeters> methods = new ConcurrentHashMap<>();
+
+    public MetricsServerInterceptor(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        String method = call.getMethodDescriptor().getFullMethodName();
+        MethodMeters meters = methods.computeIfAbsent(method, MethodMeters::new);
+        long start = System.nanoTime();
+        meters.active.incrementAndGet();
+
+        AtomicBoolean finished = new AtomicBoolean();
+        ServerCall<ReqT, RespT> measuredCall = new ForwardingServerCall.SimpleForwardingServerCall<>(call) {
+            private boolean firstMessageSent;
+
+            @Override
+            public void sendMessage(RespT message) {
+                if (!firstMessageSent) {
+                    firstMessageSent = true;
+                    meters.firstMessage.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+                if (message instanceof MessageLite lite) {
+                    meters.bytesSent.increment(lite.getSerializedSize());
+                }
+                super.sendMessage(message);
+            }
+
+            @Override
+            public void close(Status status, Metadata trailers) {
+                if (finished.compareAndSet(false, true)) {
+                    meters.finished(status.getCode(), System.nanoTime() - start);
+                }
+                super.close(status, trailers);
+            }
+        };
+
+        // A call the client cancels never reaches close()
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(next.startCall(measuredCall, headers)) {
+            @Override
+            public void onCancel() {
+                if (finished.compareAndSet(false, true)) {
+                    meters.finished(Status.Code.CANCELLED, System.nanoTime() - start);
+                }
+                super.onCancel();
+            }
+        };
+    }
+
+    private final class MethodMeters {
+        private final String method;
+        private final AtomicInteger active = new AtomicInteger();
+        private final Counter bytesSent;
+        private final Timer firstMessage;
+
+        MethodMeters(String method) {
+            this.method = method;
+            Gauge.builder("grpc.server.streams.active", active, AtomicInteger::get)
+                    .tag("method", method)
+                    .register(registry);
+            this.bytesSent = Counter.builder("grpc.server.sent")
+                    .baseUnit("bytes")
+                    .tag("method", method)
+                    .register(registry);
+            this.firstMessage = Timer.builder("grpc.server.first.message")
+                    .description("Time from call start to the first response message")
+                    .tag("method", method)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+
+        void finished(Status.Code status, long durationNanos) {
+            active.decrementAndGet();
+            String code = status.name();
+            Counter.builder("grpc.server.calls")
+                    .tags("method", method, "status", code)
+                    .register(registry)
+                    .increment();
+            Timer.builder("grpc.server.call.duration")
+                    .tags("method", method, "status", code)
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(durationNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ch.fortidemo.grpcvideoserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Where the top-level boxes of an MP4 that matter for starting playback are: ftyp (the file type), mdat (the
+// media samples) and moov (the index of every sample). Built from the box headers alone, a few small reads
+// however large the file is. A player cannot start before it has the moov, so for a file that has it after the
+// mdat, order() sends it ahead of the media data; in fast-start files it already is, and nothing changes.
+public final class Mp4Index {
+    public static final Mp4Index NONE = new Mp4Index(null, null, null);
+
+    public record Range(long start, long end) {
+        public long length() {
+            return end - start;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start + "-" + end + ")";
+        }
+    }
+
+    private final Range ftyp;
+    private final Range moov;
+    private final Range mdat;
+
+    private Mp4Index(Range ftyp, Range moov, Range mdat) {
+        this.ftyp = ftyp;
+        this.moov = moov;
+        this.mdat = mdat;
+    }
+
+    // NONE unless the file is a sequence of boxes that ends exactly at size and has a moov and an mdat
+    public static Mp4Index parse(FileChannel channel, long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16);
+        Range ftyp = null;
+        Range moov = null;
+        Range mdat = null;
+        long position = 0;
+        while (position < size) {
+            header.clear().limit((int) Math.min(16, size - position));
+            while (header.hasRemaining()) {
+                if (channel.read(header, position + header.position()) < 0) {
+                    break;
+                }
+            }
+            if (header.position() < 8) {
+                return NONE;
+            }
+            long boxSize = header.getInt(0) & 0xFFFFFFFFL;
+            if (boxSize == 1 && header.position() == 16) {
+                boxSize = header.getLong(8); // 64-bit size, for boxes over 4 GB
+            } else if (boxSize == 0) {
+                boxSize = size - position; // runs to the end of the file
+            }
+            String type = new String(header.array(), 4, 4, StandardCharsets.ISO_8859_1);
+            if (boxSize < 8 || boxSize > size - position || !type.chars().allMatch(c -> c >= 0x20 && c < 0x7F)) {
+                return NONE;
+            }
+            Range box = new Range(position, position + boxSize);
+            // Only the first of each counts, e.g. a fragmented MP4 has an mdat per fragment
+            if (type.equals("ftyp") && ftyp == null) {
+                ftyp = box;
+            } else if (type.equals("moov") && moov == null) {
+                moov = box;
+            } else if (type.equals("mdat") && mdat == null) {
+                mdat = box;
+            }
+            position += boxSize;
+        }
+        return moov != null && mdat != null ? new Mp4Index(ftyp, moov, mdat) : NONE;
+    }
+
+    public boolean isMp4() {
+        return moov != null;
+    }
+
+    public boolean isFastStart() {
+        return moov == null || moov.start() < mdat.start();
+    }
+
+    public Range getMoov() {
+        return moov;
+    }
+
+    // The pieces [start, end) is sent in: all of it in file order, unless the moov is after the mdat and inside
+    // the range. Then it is what comes before the mdat (the ftyp), the moov, the media data and the rest.
+    public List<Range> order(long start, long end) {
+        if (isFastStart() || start >= moov.start() || end < moov.end()) {
+            return List.of(new Range(start, end));
+        }
+        List<Range> order = new ArrayList<>(4);
+        for (Range part : List.of(new Range(start, Math.max(start, mdat.start())), moov,
+                new Range(Math.max(start, mdat.start()), moov.start()), new Range(moov.end(), end))) {
+            if (part.length() > 0) {
+                order.add(part);
+            }
+        }
+        return order;
+    }
+
+    @Override
+    public String toString() {
+        if (!isMp4()) {
+            return "not an MP4";
+        }
+        return "ftyp " + ftyp + ", mdat " + mdat + ", moov " + moov + (isFastStart() ? ", fast-start" : ", moov last");
+    }
+}
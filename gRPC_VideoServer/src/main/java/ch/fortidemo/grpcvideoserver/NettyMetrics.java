@@ -0,0 +1,41 @@
+package ch.fortidemo.grpcvideoserver;
+
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.util.concurrent.EventExecutor;
+import io.grpc.netty.shaded.io.netty.util.concurrent.SingleThreadEventExecutor;
+import io.grpc.netty.shaded.io.netty.util.internal.PlatformDependent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+// Saturation gauges for the gRPC transport: tasks queued on each worker event loop (a loop that keeps a
+// backlog is the first sign a pod is overloaded) and the direct memory held by the shaded Netty. When Netty
+// allocates without a Cleaner, the JVM's own buffer pool metrics do not see that memory.
+public class NettyMetrics implements MeterBinder {
+    private final EventLoopGroup workerGroup;
+
+    public NettyMetrics(EventLoopGroup workerGroup) {
+        this.workerGroup = workerGroup;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        int index = 0;
+        for (EventExecutor executor : workerGroup) {
+            if (executor instanceof SingleThreadEventExecutor loop) {
+                Gauge.builder("grpc.netty.eventloop.pending.tasks", loop, SingleThreadEventExecutor::pendingTasks)
+                        .tag("loop", Integer.toString(index++))
+                        .register(registry);
+            }
+        }
+        // -1 when Netty allocates through the JDK, then it shows up in jvm_buffer_memory_used_bytes{id="direct"} instead
+        if (PlatformDependent.usedDirectMemory() >= 0) {
+            Gauge.builder("grpc.netty.direct.memory.used", PlatformDependent::usedDirectMemory)
+                    .baseUnit("bytes")
+                    .register(registry);
+        }
+        Gauge.builder("grpc.netty.direct.memory.max", PlatformDependent::maxDirectMemory)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+}
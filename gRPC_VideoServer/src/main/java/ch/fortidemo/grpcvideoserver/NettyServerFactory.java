@@ -0,0 +1,115 @@
+package ch.fortidemo.grpcvideoserver;
+
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.channel.ChannelOption;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.Epoll;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollChannelOption;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollMode;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// The one place where both servers turn grpc.server.* into a NettyServerBuilder: transport, event loops,
+// socket options, flow control, limits, keepalive and the call executor. Callers only add TLS and services.
+@Component
+public class NettyServerFactory {
+    private final GrpcServerProperties properties;
+    private final MeterRegistry meterRegistry;
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private ExecutorService executor;
+
+    public NettyServerFactory(GrpcServerProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public NettyServerBuilder newServerBuilder() {
+        NettyServerBuilder builder = NettyServerBuilder.forPort(properties.getPort());
+
+        // 🚀 Force Netty to use NIO on macOS to prevent Epoll issues; only read before the first Epoll check
+        if (!isLinux()) {
+            System.setProperty("io.grpc.netty.shaded.io.netty.transport.noNative", "true");
+        }
+        if (isLinux() && Epoll.isAvailable()) {
+            System.out.println("🐧 Using Epoll for gRPC transport on Linux...");
+            bossGroup = new EpollEventLoopGroup(properties.getBossThreads());
+            workerGroup = new EpollEventLoopGroup(properties.getWorkerThreads());
+            builder.channelType(EpollServerSocketChannel.class)
+                    .withChildOption(EpollChannelOption.EPOLL_MODE,
+                            properties.isEpollEdgeTriggered() ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED);
+        } else {
+            System.out.println("🍏 Using NIO for gRPC transport...");
+            bossGroup = new NioEventLoopGroup(properties.getBossThreads());
+            workerGroup = new NioEventLoopGroup(properties.getWorkerThreads());
+            builder.channelType(NioServerSocketChannel.class);
+        }
+        builder.bossEventLoopGroup(bossGroup).workerEventLoopGroup(workerGroup);
+        new NettyMetrics(workerGroup).bindTo(meterRegistry);
+
+        builder.withChildOption(ChannelOption.TCP_NODELAY, properties.isTcpNoDelay());
+        if (properties.getSendBufferSize() != null) {
+            builder.withChildOption(ChannelOption.SO_SNDBUF, (int) properties.getSendBufferSize().toBytes());
+        }
+        if (properties.getReceiveBufferSize() != null) {
+            builder.withChildOption(ChannelOption.SO_RCVBUF, (int) properties.getReceiveBufferSize().toBytes());
+        }
+
+        // initialFlowControlWindow() starts at the window and lets gRPC grow it with its BDP estimate,
+        // flowControlWindow() pins it
+        int window = (int) properties.getFlowControlWindow().toBytes();
+        if (properties.isFlowControlAutoTune()) {
+            builder.initialFlowControlWindow(window);
+        } else {
+            builder.flowControlWindow(window);
+        }
+        builder.maxConcurrentCallsPerConnection(properties.getMaxConcurrentCallsPerConnection())
+                .maxInboundMessageSize((int) properties.getMaxInboundMessageSize().toBytes())
+                .keepAliveTime(properties.getKeepAliveTime().toNanos(), TimeUnit.NANOSECONDS)
+                .keepAliveTimeout(properties.getKeepAliveTimeout().toNanos(), TimeUnit.NANOSECONDS)
+                .permitKeepAliveTime(properties.getPermitKeepAliveTime().toNanos(), TimeUnit.NANOSECONDS)
+                .permitKeepAliveWithoutCalls(properties.isPermitKeepAliveWithoutCalls());
+
+        if (properties.getExecutor() == GrpcServerProperties.Executor.VIRTUAL) {
+            System.out.println("🧵 Running gRPC calls and file reads on virtual threads...");
+            executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("grpc-virtual-", 0).factory());
+            builder.executor(executor);
+        }
+
+        System.out.printf("⚙️ gRPC transport: port=%d, boss=%d, workers=%d, window=%s%s, max calls/connection=%d%n",
+                properties.getPort(), properties.getBossThreads(), workerCount(), properties.getFlowControlWindow(),
+                properties.isFlowControlAutoTune() ? " (auto)" : "", properties.getMaxConcurrentCallsPerConnection());
+        return builder;
+    }
+
+    // Call after the server has terminated
+    public void shutdown() {
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully();
+            workerGroup.shutdownGracefully();
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private int workerCount() {
+        int count = 0;
+        for (var ignored : workerGroup) {
+            count++;
+        }
+        return count;
+    }
+
+    private static boolean isLinux() {
+        return System.getProperty("os.name").toLowerCase().contains("linux");
+    }
+}
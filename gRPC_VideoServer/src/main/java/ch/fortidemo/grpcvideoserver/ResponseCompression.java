@@ -0,0 +1,63 @@
+package ch.fortidemo.grpcvideoserver;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.Codec;
+import io.grpc.CompressorRegistry;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Decides per call and per message whether a response is compressed. Video containers are compressed
+// already, so their chunks always go out as is; text-like files (subtitles, playlists, manifests) and
+// metadata such as the catalog listing are gzipped. gRPC only compresses if the client sent gzip in
+// grpc-accept-encoding and falls back to identity otherwise, so old clients keep working.
+@Component
+public class ResponseCompression {
+    private final int level;
+    private final int minSize;
+    private final Set<String> compressibleExtensions;
+    private final CompressorRegistry compressorRegistry = CompressorRegistry.newEmptyInstance();
+
+    public ResponseCompression(VideoConfig config) {
+        this.level = config.getCompressionLevel();
+        this.minSize = (int) config.getCompressionMinSize().toBytes();
+        this.compressibleExtensions = config.getCompressibleExtensions().stream()
+                .map(extension -> extension.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+        compressorRegistry.register(Codec.Identity.NONE);
+        if (level > 0) {
+            compressorRegistry.register(new GzipCodec(level));
+        }
+    }
+
+    // For the server builder, replaces grpc's gzip codec with the configured level
+    public CompressorRegistry getCompressorRegistry() {
+        return compressorRegistry;
+    }
+
+    public boolean isCompressible(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return level > 0 && dot >= 0 && compressibleExtensions.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    // Before the first chunk of a stream: compresses all of its chunks if the file type is worth it
+    public void forFile(StreamObserver<?> responseObserver, String fileName) {
+        if (isCompressible(fileName)) {
+            ((ServerCallStreamObserver<?>) responseObserver).setCompression("gzip");
+        }
+    }
+
+    // Before a single metadata message: compresses it unless it is too small to gain anything
+    public void forMessage(StreamObserver<?> responseObserver, MessageLite message) {
+        ServerCallStreamObserver<?> observer = (ServerCallStreamObserver<?>) responseObserver;
+        if (level > 0 && message.getSerializedSize() >= minSize) {
+            observer.setCompression("gzip");
+        } else {
+            observer.setMessageCompression(false);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package ch.fortidemo.grpcvideoserver;
+
+import com.google.protobuf.ByteString;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class SegmentCache {
+    // Fixed grid of cached segments; streams build chunks of any size out of these
+    public static final int SEGMENT_SIZE = 64 * 1024;
+
+    // Identifies one segment of one version of a file; a rewritten file gets new keys
+    public record SegmentKey(String path, long modified, long offset) {
+    }
+
+    @FunctionalInterface
+    public interface SegmentLoader {
+        ByteString load() throws IOException;
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<SegmentKey, ByteString> segments = new LinkedHashMap<>(1024, 0.75f, true); // access order = LRU
+    private long usedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // Off with mapped I/O: a mapped segment is a view of the page cache, not heap, and caching it would only count
+    // memory against the budget that the heap does not hold and keep the mapping alive after the streams are done
+    @Autowired
+    public SegmentCache(VideoConfig videoConfig) {
+        this(videoConfig.isMappedIo() ? 0 : videoConfig.getCacheSize().toBytes());
+    }
+
+    public SegmentCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        if (maxBytes > 0) {
+            System.out.printf("🗄 Segment cache budget: %.2f MB%n", maxBytes / (1024.0 * 1024.0));
+        } else {
+            System.out.println("🗄 Segment cache off, segments are read for every stream");
+        }
+    }
+
+    // Returns the cached segment or reads it with the loader; concurrent streams share the same bytes
+    public ByteString get(SegmentKey key, SegmentLoader loader) throws IOException {
+        synchronized (this) {
+            ByteString cached = segments.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+
+        // Load outside the lock so a slow disk read does not block other streams
+        ByteString loaded = loader.load();
+        long size = loaded.size();
+        if (size > maxBytes) {
+            return loaded;
+        }
+
+        synchronized (this) {
+            ByteString raced = segments.putIfAbsent(key, loaded);
+            if (raced != null) {
+                return raced;
+            }
+            usedBytes += size;
+            evictOverBudget();
+        }
+        return loaded;
+    }
+
+    private void evictOverBudget() {
+        Iterator<Map.Entry<SegmentKey, ByteString>> eldest = segments.entrySet().iterator();
+        while (usedBytes > maxBytes && eldest.hasNext()) {
+            usedBytes -= eldest.next().getValue().size();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, misses=%d, evictions=%d, segments=%d, used=%.2f MB / %.2f MB",
+                getHits(), getMisses(), getEvictions(), getSegmentCount(),
+                getUsedBytes() / (1024.0 * 1024.0), maxBytes / (1024.0 * 1024.0));
+    }
+}
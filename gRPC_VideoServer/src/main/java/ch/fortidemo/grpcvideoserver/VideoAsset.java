@@ -0,0 +1,145 @@
+package ch.fortidemo.grpcvideoserver;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// One indexed file of the catalog with its channel kept open, so streaming it needs no filesystem lookups.
+// Streams retain() the asset while they read it; a replaced asset closes its channel once the last one releases it.
+public class VideoAsset {
+    private final String name;
+    private final Path path;
+    private final long size;
+    private final long modified;
+    private final String etag;
+    private final FileChannel channel;
+    private final AtomicInteger references = new AtomicInteger(1); // the catalog's own reference
+    private volatile MappedVideoFile mappedFile;
+    private volatile Mp4Index mp4Index;
+    private volatile byte[] sha256; // computed by the first stream that sends the whole file with checksums
+
+    private VideoAsset(String name, Path path, long size, long modified, FileChannel channel) {
+        this.name = name;
+        this.path = path;
+        this.size = size;
+        this.modified = modified;
+        // Like a weak HTTP ETag from size and mtime: cheap, and it changes when the file is replaced or rewritten
+        this.etag = Long.toHexString(size) + "-" + Long.toHexString(modified);
+        this.channel = channel;
+    }
+
+    public static VideoAsset open(Path path, long size, long modified) throws IOException {
+        return new VideoAsset(path.getFileName().toString(), path, size, modified, FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getModified() {
+        return modified;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    // Parsed on first use and kept with the asset; a file that is not an MP4 gets Mp4Index.NONE
+    public Mp4Index getMp4Index() {
+        Mp4Index index = mp4Index;
+        if (index == null) {
+            synchronized (this) {
+                index = mp4Index;
+                if (index == null) {
+                    try {
+                        index = Mp4Index.parse(channel, size);
+                    } catch (IOException e) {
+                        System.err.println("❌ Error reading the MP4 boxes of " + path + ": " + e.getMessage());
+                        index = Mp4Index.NONE;
+                    }
+                    if (index.isMp4()) {
+                        System.out.println("🎞 Indexed MP4 boxes of " + name + ": " + index);
+                    }
+                    mp4Index = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    // Null until a stream has hashed the file. A changed file is a new asset, so this never goes stale.
+    public byte[] getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(byte[] sha256) {
+        this.sha256 = sha256;
+    }
+
+    public ByteString read(long offset, int length, boolean mappedIo) throws IOException {
+        if (mappedIo) {
+            return mapped().slice(offset, length);
+        }
+
+        // Fallback path: one positioned read into a heap buffer that the message then owns
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of " + path + " at " + (offset + buffer.position()));
+            }
+        }
+        return UnsafeByteOperations.unsafeWrap(buffer.array());
+    }
+
+    // The file is mapped once on first use and the mapping is shared by every stream of this asset
+    private MappedVideoFile mapped() throws IOException {
+        MappedVideoFile mapped = mappedFile;
+        if (mapped == null) {
+            synchronized (this) {
+                mapped = mappedFile;
+                if (mapped == null) {
+                    mapped = MappedVideoFile.map(channel);
+                    mappedFile = mapped;
+                }
+            }
+        }
+        return mapped;
+    }
+
+    // Returns false if the asset was already retired and closed
+    public boolean retain() {
+        int count;
+        do {
+            count = references.get();
+            if (count == 0) {
+                return false;
+            }
+        } while (!references.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("❌ Error closing " + path + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -1,62 +1,79 @@
 package ch.fortidemo.grpcvideoserver;
 
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import ch.fortidemo.grpc.video.*;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service
 public class VideoServiceImpl extends VideoServiceGrpc.VideoServiceImplBase {
 
-    private final String videoFilePath;
     private final String defaultFileName;
+    private final VideoConfig videoConfig;
+    private final SegmentCache segmentCache;
+    private final VideoCatalog videoCatalog;
+    private final StreamMetrics streamMetrics;
+    private final ResponseCompression responseCompression;
+    private final BandwidthShaper bandwidthShaper;
 
     public VideoServiceImpl(
-            @Value("${video.file.path:/data/videos}") String videoFilePath,
-            @Value("${video.file.name:video.mp4}") String defaultFileName) {
-        this.videoFilePath = videoFilePath;
+            @Value("${video.file.name:video.mp4}") String defaultFileName,
+            VideoConfig videoConfig,
+            SegmentCache segmentCache,
+            VideoCatalog videoCatalog,
+            StreamMetrics streamMetrics,
+            ResponseCompression responseCompression,
+            BandwidthShaper bandwidthShaper) {
         this.defaultFileName = defaultFileName;
+        this.videoConfig = videoConfig;
+        this.segmentCache = segmentCache;
+        this.videoCatalog = videoCatalog;
+        this.streamMetrics = streamMetrics;
+        this.responseCompression = responseCompression;
+        this.bandwidthShaper = bandwidthShaper;
 
         System.out.println("✅ VideoServiceImpl initialized with:");
-        System.out.println("📂 videoFilePath: " + videoFilePath);
+        System.out.println("📚 catalog: " + videoCatalog.list().size() + " video(s)");
         System.out.println("🎬 defaultFileName: " + defaultFileName);
     }
 
     @Override
     public void streamVideo(VideoRequest request, StreamObserver<VideoChunk> responseObserver) {
         String filename = request.getFilename().isEmpty() ? defaultFileName : request.getFilename();
-        File videoFile = new File(videoFilePath, filename);
+        VideoAsset asset = videoCatalog.acquire(filename);
 
-        if (!videoFile.exists()) {
+        if (asset == null) {
             System.err.println("❌ Video file not found: " + filename);
-            responseObserver.onError(new IOException("File not found: " + filename));
+            responseObserver.onError(Status.NOT_FOUND.withDescription("File not found: " + filename).asRuntimeException());
             return;
         }
 
-        System.out.println("📂 Streaming video file: " + videoFile.getAbsolutePath());
-
-        try (FileInputStream fis = new FileInputStream(videoFile)) {
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-
-            while ((bytesRead = fis.read(buffer)) != -1) {
-                VideoChunk chunk = VideoChunk.newBuilder()
-                        .setData(com.google.protobuf.ByteString.copyFrom(buffer, 0, bytesRead))
-                        .build();
-                responseObserver.onNext(chunk);
-                System.out.println("📦 Sent chunk of size: " + bytesRead + " bytes");
-            }
-
-            System.out.println("✅ Video streaming completed: " + filename);
-            responseObserver.onCompleted();
-        } catch (IOException e) {
-            System.err.println("❌ Error while streaming: " + e.getMessage());
-            responseObserver.onError(e);
+        System.out.println("📂 Streaming video file: " + asset.getPath()
+                + (videoConfig.isMappedIo() ? " (mapped)" : " (copy)"));
+
+        ChunkSizer chunkSizer = new ChunkSizer((int) videoConfig.getChunkSize().toBytes(),
+                (int) videoConfig.getMinChunkSize().toBytes(), (int) videoConfig.getMaxChunkSize().toBytes(), System.nanoTime());
+        responseCompression.forFile(responseObserver, filename);
+        new VideoStreamer(asset, chunkSizer, videoConfig.isMappedIo(), segmentCache, streamMetrics,
+                bandwidthShaper.open(), responseObserver)
+                .start(request);
+    }
+
+    @Override
+    public void listVideos(ListVideosRequest request, StreamObserver<VideoList> responseObserver) {
+        VideoList.Builder videoList = VideoList.newBuilder();
+        for (VideoAsset asset : videoCatalog.list()) {
+            videoList.addVideos(VideoInfo.newBuilder()
+                    .setName(asset.getName())
+                    .setSize(asset.getSize())
+                    .setModifiedTime(asset.getModified())
+                    .setEtag(asset.getEtag()));
         }
+        VideoList list = videoList.build();
+        responseCompression.forMessage(responseObserver, list);
+        responseObserver.onNext(list);
+        responseObserver.onCompleted();
     }
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+package ch.fortidemo.grpcvideoserver;
+
+import ch.fortidemo.grpc.video.ListVideosRequest;
+import ch.fortidemo.grpc.video.VideoChunk;
+import ch.fortidemo.grpc.video.VideoList;
+import ch.fortidemo.grpc.video.VideoRequest;
+import ch.fortidemo.grpc.video.VideoServiceGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdmissionControlInterceptorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AdmissionControlInterceptor admissionControl = new AdmissionControlInterceptor(1, registry);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private Server server;
+    private ManagedChannel channel;
+
+    // Streams one chunk and holds the call open until the test releases it
+    private final VideoServiceGrpc.VideoServiceImplBase service = new VideoServiceGrpc.VideoServiceImplBase() {
+        @Override
+        public void streamVideo(VideoRequest request, StreamObserver<VideoChunk> responseObserver) {
+            responseObserver.onNext(VideoChunk.getDefaultInstance());
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            responseObserver.onCompleted();
+        }
+
+        @Override
+        public void listVideos(ListVideosRequest request, StreamObserver<VideoList> responseObserver) {
+            responseObserver.onNext(VideoList.getDefaultInstance());
+            responseObserver.onCompleted();
+        }
+    };
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+                .addService(ServerInterceptors.intercept(service, admissionControl))
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Test
+    void rejectsStreamsOverTheLimitAndAdmitsAgainOnceOneFinishes() throws Exception {
+        VideoServiceGrpc.VideoServiceBlockingStub stub = VideoServiceGrpc.newBlockingStub(channel);
+        Iterator<VideoChunk> first = stub.streamVideo(VideoRequest.getDefaultInstance());
+        first.next();
+
+        assertThatThrownBy(() -> stub.streamVideo(VideoRequest.getDefaultInstance()).next())
+                .isInstanceOfSatisfying(StatusRuntimeException.class,
+                        e -> assertThat(e.getStatus().getCode()).isEqualTo(Status.Code.RESOURCE_EXHAUSTED));
+        assertThat(stub.listVideos(ListVideosRequest.getDefaultInstance())).isNotNull();
+        assertThat(registry.get("grpc.server.admission.rejected").tag("reason", "limit").counter().count())
+                .isEqualTo(1.0);
+
+        release.countDown();
+        assertThat(first.hasNext()).isFalse();
+        assertThat(admissionControl.getActiveStreams()).isZero();
+        Iterator<VideoChunk> next = stub.streamVideo(VideoRequest.getDefaultInstance());
+        next.next();
+        assertThat(next.hasNext()).isFalse();
+    }
+
+    @Test
+    void refusesEveryNewCallWhileDraining() {
+        admissionControl.startDraining();
+
+        VideoServiceGrpc.VideoServiceBlockingStub stub = VideoServiceGrpc.newBlockingStub(channel);
+        assertThatThrownBy(() -> stub.listVideos(ListVideosRequest.getDefaultInstance()))
+                .isInstanceOfSatisfying(StatusRuntimeException.class,
+                        e -> assertThat(e.getStatus().getCode()).isEqualTo(Status.Code.UNAVAILABLE));
+        assertThat(registry.get("grpc.server.admission.rejected").tag("reason", "draining").counter().count())
+                .isEqualTo(1.0);
+    }
+}
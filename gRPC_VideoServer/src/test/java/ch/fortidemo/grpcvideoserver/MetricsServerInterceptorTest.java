@@ -0,0 +1,81 @@
+package ch.fortidemo.grpcvideoserver;
+
+import ch.fortidemo.grpc.video.VideoChunk;
+import ch.fortidemo.grpc.video.VideoRequest;
+import ch.fortidemo.grpc.video.VideoServiceGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetricsServerInterceptorTest {
+
+    private static final String METHOD = VideoServiceGrpc.getStreamVideoMethod().getFullMethodName();
+    private static final int FILE_SIZE = 300_000;
+
+    @TempDir
+    Path videoDir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private Server server;
+    private ManagedChannel channel;
+    private VideoCatalog catalog;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (catalog != null) {
+            catalog.stop();
+        }
+        if (channel != null) {
+            channel.shutdownNow();
+        }
+        if (server != null) {
+            server.shutdownNow();
+        }
+    }
+
+    @Test
+    void recordsCallsBytesAndLatencies() throws Exception {
+        Files.write(videoDir.resolve("video.mp4"), new byte[FILE_SIZE]);
+        catalog = new VideoCatalog(videoDir.toString());
+        catalog.start();
+        VideoServiceImpl service = new VideoServiceImpl("video.mp4", new VideoConfig(), new SegmentCache(0), catalog,
+                new StreamMetrics(false, false, 1000), new ResponseCompression(new VideoConfig()),
+                new BandwidthShaper(new VideoConfig(), registry));
+
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+                .addService(ServerInterceptors.intercept(service, new MetricsServerInterceptor(registry)))
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).build();
+
+        Iterator<VideoChunk> chunks = VideoServiceGrpc.newBlockingStub(channel)
+                .streamVideo(VideoRequest.newBuilder().setFilename("video.mp4").build());
+        long received = 0;
+        while (chunks.hasNext()) {
+            received += chunks.next().getData().size();
+        }
+        assertThat(received).isEqualTo(FILE_SIZE);
+
+        // The server closes the call before the client sees the end of the stream
+        assertThat(registry.get("grpc.server.calls").tag("method", METHOD).tag("status", "OK").counter().count())
+                .isEqualTo(1.0);
+        assertThat(registry.get("grpc.server.sent").tag("method", METHOD).counter().count())
+                .isGreaterThanOrEqualTo(FILE_SIZE);
+        assertThat(registry.get("grpc.server.first.message").tag("method", METHOD).timer().count()).isEqualTo(1);
+        assertThat(registry.get("grpc.server.call.duration").tag("method", METHOD).timer().count()).isEqualTo(1);
+        assertThat(registry.get("grpc.server.streams.active").tag("method", METHOD).gauge().value()).isZero();
+    }
+}
@@ -0,0 +1,64 @@
+package ch.fortidemo.grpcvideoserver;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Mp4IndexTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void ordersTheMoovAfterWhatPrecedesTheMediaData() throws Exception {
+        // ftyp, free, mdat with a 64-bit size, moov, and a trailing udta
+        ByteBuffer file = ByteBuffer.allocate(24 + 8 + 1016 + 200 + 16);
+        file.putInt(24).put("ftyp".getBytes()).position(24);
+        file.putInt(8).put("free".getBytes());
+        file.putInt(1).put("mdat".getBytes()).putLong(1016).position(24 + 8 + 1016);
+        file.putInt(200).put("moov".getBytes()).position(24 + 8 + 1016 + 200);
+        file.putInt(16).put("udta".getBytes());
+        Mp4Index index = parse(file.array());
+
+        assertThat(index.isMp4()).isTrue();
+        assertThat(index.isFastStart()).isFalse();
+        assertThat(index.getMoov()).isEqualTo(new Mp4Index.Range(1048, 1248));
+        assertThat(index.order(0, 1264)).containsExactly(new Mp4Index.Range(0, 32), new Mp4Index.Range(1048, 1248),
+                new Mp4Index.Range(32, 1048), new Mp4Index.Range(1248, 1264));
+        // A resumed download that stopped inside the media data still gets the moov first
+        assertThat(index.order(500, 1264)).containsExactly(new Mp4Index.Range(1048, 1248),
+                new Mp4Index.Range(500, 1048), new Mp4Index.Range(1248, 1264));
+        // Ranges without all of the moov are sent as they are
+        assertThat(index.order(0, 1100)).containsExactly(new Mp4Index.Range(0, 1100));
+    }
+
+    @Test
+    void leavesFastStartAndOtherFilesAlone() throws Exception {
+        ByteBuffer fastStart = ByteBuffer.allocate(24 + 100 + 500);
+        fastStart.putInt(24).put("ftyp".getBytes()).position(24);
+        fastStart.putInt(100).put("moov".getBytes()).position(124);
+        fastStart.putInt(0).put("mdat".getBytes()); // size 0: up to the end of the file
+        Mp4Index index = parse(fastStart.array());
+        assertThat(index.isFastStart()).isTrue();
+        assertThat(index.order(0, 624)).containsExactly(new Mp4Index.Range(0, 624));
+
+        assertThat(parse("WEBVTT\n\n00:00.000 --> 00:02.000\nHello\n".getBytes()).isMp4()).isFalse();
+        // A box claiming to be larger than the file
+        ByteBuffer truncated = ByteBuffer.allocate(64);
+        truncated.putInt(1000).put("mdat".getBytes());
+        assertThat(parse(truncated.array())).isSameAs(Mp4Index.NONE);
+    }
+
+    private Mp4Index parse(byte[] content) throws Exception {
+        Path file = Files.write(dir.resolve("video.mp4"), content);
+        try (FileChannel channel = FileChannel.open(file)) {
+            return Mp4Index.parse(channel, content.length);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package ch.fortidemo.grpcvideoserver;
+
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentCacheTest {
+
+    @Test
+    void evictsTheLeastRecentlyUsedSegmentsOverBudget() throws Exception {
+        SegmentCache cache = new SegmentCache(300);
+        SegmentCache.SegmentKey first = key(0);
+        SegmentCache.SegmentKey second = key(100);
+        SegmentCache.SegmentKey third = key(200);
+
+        cache.get(first, () -> segment(100));
+        cache.get(second, () -> segment(100));
+        cache.get(third, () -> segment(100));
+        // Touching the first makes the second the least recently used
+        cache.get(first, () -> segment(100));
+        cache.get(key(300), () -> segment(100));
+
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(4);
+        assertThat(cache.getEvictions()).isEqualTo(1);
+        assertThat(cache.getSegmentCount()).isEqualTo(3);
+        assertThat(cache.getUsedBytes()).isEqualTo(300);
+
+        ByteString reloaded = segment(100);
+        assertThat(cache.get(second, () -> reloaded)).isSameAs(reloaded);
+        assertThat(cache.get(first, () -> segment(100))).isNotSameAs(reloaded);
+        assertThat(cache.getMisses()).isEqualTo(5);
+
+        // Larger than the whole budget: handed out, never cached
+        cache.get(key(400), () -> segment(301));
+        assertThat(cache.getUsedBytes()).isEqualTo(300);
+    }
+
+    @Test
+    void keepsTheFirstOfTwoConcurrentLoadsOfASegment() throws Exception {
+        SegmentCache cache = new SegmentCache(1024);
+        SegmentCache.SegmentKey key = key(0);
+        CountDownLatch bothLoading = new CountDownLatch(2);
+        ByteString first = segment(100);
+        ByteString second = segment(100);
+
+        // Both streams miss before either has put its segment, the loads run outside the lock
+        CompletableFuture<ByteString> a = CompletableFuture.supplyAsync(() -> load(cache, key, bothLoading, first));
+        CompletableFuture<ByteString> b = CompletableFuture.supplyAsync(() -> load(cache, key, bothLoading, second));
+        ByteString winner = a.get(10, TimeUnit.SECONDS);
+
+        assertThat(b.get(10, TimeUnit.SECONDS)).isSameAs(winner);
+        assertThat(winner).isIn(first, second);
+        assertThat(cache.getMisses()).isEqualTo(2);
+        assertThat(cache.getSegmentCount()).isEqualTo(1);
+        // The loser's segment was dropped, not counted against the budget
+        assertThat(cache.getUsedBytes()).isEqualTo(100);
+        assertThat(cache.get(key, () -> segment(100))).isSameAs(winner);
+    }
+
+    @Test
+    void cachesOnlyTheSegmentsOfTheCopyFallback() throws Exception {
+        VideoConfig config = new VideoConfig();
+        config.setCacheSize(DataSize.ofKilobytes(1));
+        config.setMappedIo(false);
+        assertThat(new SegmentCache(config).getMaxBytes()).isEqualTo(1024);
+
+        // Mapped segments already live in the page cache
+        config.setMappedIo(true);
+        SegmentCache mapped = new SegmentCache(config);
+        mapped.get(key(0), () -> segment(100));
+        assertThat(mapped.getMaxBytes()).isZero();
+        assertThat(mapped.getSegmentCount()).isZero();
+        assertThat(mapped.getUsedBytes()).isZero();
+    }
+
+    private static ByteString load(SegmentCache cache, SegmentCache.SegmentKey key, CountDownLatch bothLoading,
+                                   ByteString segment) {
+        try {
+            return cache.get(key, () -> {
+                bothLoading.countDown();
+                try {
+                    bothLoading.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return segment;
+            });
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static SegmentCache.SegmentKey key(long offset) {
+        return new SegmentCache.SegmentKey("/videos/video.mp4", 1, offset);
+    }
+
+    private static ByteString segment(int size) {
+        return ByteString.copyFrom(new byte[size]);
+    }
+}
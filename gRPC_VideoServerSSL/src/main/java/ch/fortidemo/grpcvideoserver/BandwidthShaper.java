@@ -0,0 +1,275 @@
+package ch.fortidemo.grpcvideoserver;
+
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Egress shaping for video streams with a token bucket per stream. The limits per stream
+// (video.stream-rate-limit), per client (video.client-rate-limit) and for the whole server
+// (video.total-rate-limit) are turned into a rate per bucket every REBALANCE interval by max-min fair sharing:
+// a stream that needs less than its share (slow link, end of file) keeps what it uses, and the rest is split
+// evenly among the streams that want more. So one client on a fast LAN cannot take the whole NIC, and many
+// viewers each get the same slice of it instead of whoever asks first. A stream out of tokens stops sending and
+// resumes once its bucket refills, like it does when the transport is not ready. Clients are told apart by
+// video.client-id-header if set, else by IP address. Without limits every stream shares one unlimited budget.
+@Component
+public class BandwidthShaper implements ServerInterceptor {
+    private static final Context.Key<String> CLIENT = Context.key("bandwidth-client");
+    private static final long REBALANCE_MILLIS = 100;
+    private static final double BURST_SECONDS = 0.25; // bucket size in seconds at the current rate
+    private static final double HEADROOM = 1.25; // a stream below its share may grow by this factor per interval
+    private static final double MIN_DEMAND = 64 * 1024; // bytes/s every stream may ramp up from
+
+    private final double streamLimit;
+    private final double clientLimit;
+    private final double totalLimit;
+    private final Metadata.Key<String> clientIdHeader;
+    private final Set<Budget> budgets = ConcurrentHashMap.newKeySet();
+    private final Budget unlimited = new Budget("*");
+    private final Timer pauses;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService resumeExecutor;
+    private long lastRebalance = System.nanoTime();
+    private volatile double fairShare = Double.NaN;
+    private volatile double allocated;
+    private volatile int clients;
+
+    public BandwidthShaper(VideoConfig config, MeterRegistry registry) {
+        this.streamLimit = bytesPerSecond(config.getStreamRateLimit());
+        this.clientLimit = bytesPerSecond(config.getClientRateLimit());
+        this.totalLimit = bytesPerSecond(config.getTotalRateLimit());
+        this.clientIdHeader = config.getClientIdHeader() == null ? null
+                : Metadata.Key.of(config.getClientIdHeader(), Metadata.ASCII_STRING_MARSHALLER);
+
+        Gauge.builder("video.bandwidth.streams", budgets, Set::size)
+                .description("Video streams with a token bucket")
+                .register(registry);
+        Gauge.builder("video.bandwidth.clients", () -> clients)
+                .description("Distinct clients among the shaped streams")
+                .register(registry);
+        Gauge.builder("video.bandwidth.fair.share", () -> fairShare)
+                .description("Total limit split among the streams that want more, NaN while it is not reached")
+                .baseUnit("bytes.per.second")
+                .register(registry);
+        Gauge.builder("video.bandwidth.allocated", () -> allocated)
+                .description("Sum of the rates handed to all streams")
+                .baseUnit("bytes.per.second")
+                .register(registry);
+        this.pauses = Timer.builder("video.bandwidth.throttled")
+                .description("Pauses of streams waiting for tokens")
+                .register(registry);
+
+        if (isEnabled()) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                    .name("bandwidth-shaper").daemon().factory());
+            // Resumed streams read from the segment cache or disk, so they do not run on the timer thread
+            resumeExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+                    .name("bandwidth-resume-", 0).factory());
+            scheduler.scheduleAtFixedRate(this::rebalance, REBALANCE_MILLIS, REBALANCE_MILLIS, TimeUnit.MILLISECONDS);
+            System.out.printf("⚖️ Bandwidth shaping: stream=%s, client=%s, total=%s per second, clients by %s%n",
+                    format(streamLimit), format(clientLimit), format(totalLimit),
+                    clientIdHeader == null ? "IP address" : clientIdHeader.name());
+        }
+    }
+
+    public boolean isEnabled() {
+        return streamLimit < Double.POSITIVE_INFINITY || clientLimit < Double.POSITIVE_INFINITY
+                || totalLimit < Double.POSITIVE_INFINITY;
+    }
+
+    // Remembers who is calling so streamVideo can open a budget for the right client
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        if (!isEnabled()) {
+            return next.startCall(call, headers);
+        }
+        String client = clientIdHeader == null ? null : headers.get(clientIdHeader);
+        if (client == null) {
+            SocketAddress address = call.getAttributes().get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR);
+            client = address instanceof InetSocketAddress inet && inet.getAddress() != null
+                    ? inet.getAddress().getHostAddress() : String.valueOf(address);
+        }
+        return Contexts.interceptCall(Context.current().withValue(CLIENT, client), call, headers, next);
+    }
+
+    // For a new stream, from within the call; close the budget when the stream ends
+    public Budget open() {
+        if (!isEnabled()) {
+            return unlimited;
+        }
+        String client = CLIENT.get();
+        Budget budget = new Budget(client == null ? "unknown" : client);
+        budgets.add(budget);
+        allocate();
+        return budget;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            resumeExecutor.shutdownNow();
+        }
+    }
+
+    // Measures what every stream used since the last interval, then hands out the rates
+    private synchronized void rebalance() {
+        long now = System.nanoTime();
+        for (Budget budget : budgets) {
+            // Streams opened during the interval are measured from their start
+            double used = budget.sent.getAndSet(0) / ((now - Math.max(lastRebalance, budget.opened)) / 1e9);
+            // A stream that hit its limit may want more than it got, one that did not is bounded by its client
+            budget.demand = budget.throttled ? Double.POSITIVE_INFINITY : Math.max(MIN_DEMAND, used * HEADROOM);
+            budget.throttled = false;
+        }
+        lastRebalance = now;
+        allocate();
+    }
+
+    // Stream limit first, then each client's limit split among its streams, then the total among all streams
+    private synchronized void allocate() {
+        List<Budget> all = new ArrayList<>(budgets);
+        Map<String, List<Budget>> byClient = new HashMap<>();
+        for (Budget budget : all) {
+            byClient.computeIfAbsent(budget.client, client -> new ArrayList<>()).add(budget);
+        }
+        double[] wanted = new double[all.size()];
+        int i = 0;
+        for (List<Budget> streams : byClient.values()) {
+            double[] perClient = new double[streams.size()];
+            for (int j = 0; j < perClient.length; j++) {
+                perClient[j] = Math.min(streamLimit, streams.get(j).demand);
+            }
+            share(clientLimit, perClient);
+            for (int j = 0; j < perClient.length; j++) {
+                all.set(i, streams.get(j));
+                wanted[i++] = perClient[j];
+            }
+        }
+        double level = share(totalLimit, wanted);
+        double sum = 0;
+        for (i = 0; i < wanted.length; i++) {
+            all.get(i).rate = wanted[i];
+            sum += wanted[i];
+        }
+
+        fairShare = level < Double.POSITIVE_INFINITY ? level : Double.NaN;
+        allocated = sum;
+        clients = byClient.size();
+    }
+
+    // Max-min fair share of capacity: turns demands into allocations in place and returns the level the largest
+    // demands were cut to, or infinity if everyone gets what they asked for
+    static double share(double capacity, double[] demands) {
+        if (capacity == Double.POSITIVE_INFINITY) {
+            return Double.POSITIVE_INFINITY;
+        }
+        Integer[] order = new Integer[demands.length];
+        Arrays.setAll(order, k -> k);
+        Arrays.sort(order, (a, b) -> Double.compare(demands[a], demands[b]));
+        double remaining = capacity;
+        for (int k = 0; k < order.length; k++) {
+            double even = remaining / (order.length - k);
+            if (demands[order[k]] > even) {
+                // Sorted ascending, so every demand from here on gets the same even split
+                for (int rest = k; rest < order.length; rest++) {
+                    demands[order[rest]] = even;
+                }
+                return even;
+            }
+            remaining -= demands[order[k]];
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    private static double bytesPerSecond(DataSize limit) {
+        return limit == null || limit.toBytes() <= 0 ? Double.POSITIVE_INFINITY : limit.toBytes();
+    }
+
+    private static String format(double bytesPerSecond) {
+        return bytesPerSecond == Double.POSITIVE_INFINITY ? "unlimited"
+                : String.format("%.2f MB", bytesPerSecond / (1024.0 * 1024.0));
+    }
+
+    // The tokens of one stream. delay() and consume() are called by the stream's sender only; the rate is set by
+    // the shaper. Tokens may go negative, so a chunk larger than the bucket still goes out and is paid off after.
+    public final class Budget {
+        private final String client;
+        private final AtomicLong sent = new AtomicLong();
+        private final long opened = System.nanoTime();
+        private volatile double rate = Double.POSITIVE_INFINITY;
+        private volatile boolean throttled;
+        private double demand = Double.POSITIVE_INFINITY; // new streams start by asking for their full share
+        private double tokens;
+        private long refilled = System.nanoTime();
+
+        private Budget(String client) {
+            this.client = client;
+        }
+
+        // 0 if the next chunk may go out now, else the nanoseconds until the bucket is out of debt
+        public long delay(long now) {
+            double current = rate;
+            if (current == Double.POSITIVE_INFINITY) {
+                return 0;
+            }
+            tokens = Math.min(current * BURST_SECONDS, tokens + current * (now - refilled) / 1e9);
+            refilled = now;
+            if (tokens >= 0) {
+                return 0;
+            }
+            throttled = true;
+            return (long) (-tokens / current * 1e9) + 1;
+        }
+
+        public void consume(int bytes) {
+            if (this == unlimited) {
+                return;
+            }
+            tokens -= bytes;
+            sent.addAndGet(bytes);
+        }
+
+        // Runs the sender again once the delay has passed
+        public void resumeAfter(long nanos, Runnable sender) {
+            pauses.record(nanos, TimeUnit.NANOSECONDS);
+            scheduler.schedule(() -> resumeExecutor.execute(sender), nanos, TimeUnit.NANOSECONDS);
+        }
+
+        public void close() {
+            if (this != unlimited && budgets.remove(this)) {
+                allocate();
+            }
+        }
+
+        public double getRate() {
+            return rate;
+        }
+    }
+}
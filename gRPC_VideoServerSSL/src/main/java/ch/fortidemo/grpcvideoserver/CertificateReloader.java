@@ -0,0 +1,319 @@
+package ch.fortidemo.grpcvideoserver;
+
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.openssl.PEMKeyPair;
+import org.bouncycastle.openssl.PEMParser;
+import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedKeyManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Server certificate, key and trusted CAs read from the file system and swapped in while the server runs.
+// The SslContext is built once around the two delegating managers below, so every new handshake sees the
+// current files while established connections, and the streams on them, keep going untouched. The parent
+// directories are watched like the video catalog does; this also catches Kubernetes secret updates, which
+// swap a ..data symlink instead of touching the files. A half-written or mismatched pair is rejected and the
+// current credentials stay in place until the next change.
+public class CertificateReloader {
+    private static final String ALIAS = "server";
+    private static final char[] PASSWORD = new char[0];
+    private static final long SETTLE_MILLIS = 500; // let the writer finish the cert and the key
+
+    private final Path certChain;
+    private final Path privateKey;
+    private final Path trustCerts;
+    private final ReloadingKeyManager keyManager = new ReloadingKeyManager();
+    private final ReloadingTrustManager trustManager = new ReloadingTrustManager();
+    private volatile String fingerprint;
+    private WatchService watchService;
+
+    // trustCerts may be null when clients are not authenticated
+    public CertificateReloader(Path certChain, Path privateKey, Path trustCerts) {
+        this.certChain = certChain.toAbsolutePath();
+        this.privateKey = privateKey.toAbsolutePath();
+        this.trustCerts = trustCerts == null ? null : trustCerts.toAbsolutePath();
+    }
+
+    // Loads the files once and watches them from then on; fails if the initial files are unusable
+    public void start() throws IOException {
+        try {
+            load();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot load TLS credentials from " + certChain + " and " + privateKey, e);
+        }
+
+        Set<Path> directories = new LinkedHashSet<>(List.of(certChain.getParent(), privateKey.getParent()));
+        if (trustCerts != null) {
+            directories.add(trustCerts.getParent());
+        }
+        watchService = certChain.getFileSystem().newWatchService();
+        for (Path directory : directories) {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        Thread watcher = new Thread(this::watch, "tls-certificate-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        System.out.println("👀 Watching " + directories + " for new TLS certificates");
+    }
+
+    public void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    public KeyManager getKeyManager() {
+        return keyManager;
+    }
+
+    public TrustManager getTrustManager() {
+        return trustCerts == null ? null : trustManager;
+    }
+
+    public X509Certificate getCertificate() {
+        return keyManager.delegate.getCertificateChain(ALIAS)[0];
+    }
+
+    // Returns false if the files are unchanged or unusable, the current credentials are kept then
+    boolean reload() {
+        try {
+            return load();
+        } catch (IOException | GeneralSecurityException e) {
+            System.err.println("⚠️ Not reloading TLS certificate, keeping the current one: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private synchronized boolean load() throws IOException, GeneralSecurityException {
+        byte[] chainBytes = Files.readAllBytes(certChain);
+        byte[] keyBytes = Files.readAllBytes(privateKey);
+        byte[] trustBytes = trustCerts == null ? new byte[0] : Files.readAllBytes(trustCerts);
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(chainBytes);
+        digest.update(keyBytes);
+        digest.update(trustBytes);
+        String newFingerprint = HexFormat.of().formatHex(digest.digest());
+        if (newFingerprint.equals(fingerprint)) {
+            return false;
+        }
+
+        List<X509Certificate> chain = readCertificates(chainBytes, certChain);
+        PrivateKey key = readPrivateKey(keyBytes, privateKey);
+        checkKeyMatches(key, chain.get(0));
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry(ALIAS, key, PASSWORD, chain.toArray(new X509Certificate[0]));
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, PASSWORD);
+        X509ExtendedKeyManager newKeyManager = (X509ExtendedKeyManager) keyManagerFactory.getKeyManagers()[0];
+
+        X509ExtendedTrustManager newTrustManager = null;
+        if (trustCerts != null) {
+            KeyStore trustStore = KeyStore.getInstance("PKCS12");
+            trustStore.load(null, null);
+            List<X509Certificate> cas = readCertificates(trustBytes, trustCerts);
+            for (int i = 0; i < cas.size(); i++) {
+                trustStore.setCertificateEntry("ca-" + i, cas.get(i));
+            }
+            TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagerFactory.init(trustStore);
+            newTrustManager = (X509ExtendedTrustManager) trustManagerFactory.getTrustManagers()[0];
+        }
+
+        keyManager.delegate = newKeyManager;
+        if (newTrustManager != null) {
+            trustManager.delegate = newTrustManager;
+        }
+        fingerprint = newFingerprint;
+        X509Certificate certificate = chain.get(0);
+        System.out.printf("🔑 Loaded TLS certificate %s, valid until %s%n",
+                certificate.getSubjectX500Principal().getName(), certificate.getNotAfter().toInstant());
+        return true;
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                // Collect the rest of the burst (cert, key, symlink swap) and reload once
+                Thread.sleep(SETTLE_MILLIS);
+                while (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                    key = watchService.poll();
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Reloader stopped
+        }
+    }
+
+    private static List<X509Certificate> readCertificates(byte[] pem, Path file) throws CertificateException {
+        List<X509Certificate> certificates = CertificateFactory.getInstance("X.509")
+                .generateCertificates(new ByteArrayInputStream(pem)).stream()
+                .map(X509Certificate.class::cast)
+                .toList();
+        if (certificates.isEmpty()) {
+            throw new CertificateException("No certificate in " + file);
+        }
+        return certificates;
+    }
+
+    // PKCS#8 as well as the traditional RSA/EC key files written by openssl genrsa/ecparam
+    private static PrivateKey readPrivateKey(byte[] pem, Path file) throws IOException {
+        try (PEMParser parser = new PEMParser(new InputStreamReader(new ByteArrayInputStream(pem), StandardCharsets.US_ASCII))) {
+            Object object = parser.readObject();
+            JcaPEMKeyConverter converter = new JcaPEMKeyConverter();
+            if (object instanceof PEMKeyPair keyPair) {
+                return converter.getPrivateKey(keyPair.getPrivateKeyInfo());
+            }
+            if (object instanceof PrivateKeyInfo keyInfo) {
+                return converter.getPrivateKey(keyInfo);
+            }
+            throw new IOException("No unencrypted private key in " + file);
+        }
+    }
+
+    // Catches a new certificate next to the old key, which would fail every handshake
+    private static void checkKeyMatches(PrivateKey key, X509Certificate certificate) throws GeneralSecurityException {
+        String algorithm = switch (key.getAlgorithm()) {
+            case "RSA" -> "SHA256withRSA";
+            case "EC" -> "SHA256withECDSA";
+            case "Ed25519", "EdDSA" -> "Ed25519";
+            default -> null;
+        };
+        if (algorithm == null) {
+            return;
+        }
+        byte[] challenge = new byte[32];
+        new SecureRandom().nextBytes(challenge);
+        Signature signer = Signature.getInstance(algorithm);
+        signer.initSign(key);
+        signer.update(challenge);
+        byte[] signature = signer.sign();
+        Signature verifier = Signature.getInstance(algorithm);
+        verifier.initVerify(certificate.getPublicKey());
+        verifier.update(challenge);
+        if (!verifier.verify(signature)) {
+            throw new CertificateException("Private key does not match certificate "
+                    + certificate.getSubjectX500Principal().getName());
+        }
+    }
+
+    private static final class ReloadingKeyManager extends X509ExtendedKeyManager {
+        private volatile X509ExtendedKeyManager delegate;
+
+        @Override
+        public String[] getClientAliases(String keyType, Principal[] issuers) {
+            return delegate.getClientAliases(keyType, issuers);
+        }
+
+        @Override
+        public String chooseClientAlias(String[] keyType, Principal[] issuers, Socket socket) {
+            return delegate.chooseClientAlias(keyType, issuers, socket);
+        }
+
+        @Override
+        public String[] getServerAliases(String keyType, Principal[] issuers) {
+            return delegate.getServerAliases(keyType, issuers);
+        }
+
+        @Override
+        public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+            return delegate.chooseServerAlias(keyType, issuers, socket);
+        }
+
+        @Override
+        public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+            return delegate.chooseEngineServerAlias(keyType, issuers, engine);
+        }
+
+        @Override
+        public String chooseEngineClientAlias(String[] keyType, Principal[] issuers, SSLEngine engine) {
+            return delegate.chooseEngineClientAlias(keyType, issuers, engine);
+        }
+
+        @Override
+        public X509Certificate[] getCertificateChain(String alias) {
+            return delegate.getCertificateChain(alias);
+        }
+
+        @Override
+        public PrivateKey getPrivateKey(String alias) {
+            return delegate.getPrivateKey(alias);
+        }
+    }
+
+    private static final class ReloadingTrustManager extends X509ExtendedTrustManager {
+        private volatile X509ExtendedTrustManager delegate;
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            delegate.checkClientTrusted(chain, authType, socket);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            delegate.checkServerTrusted(chain, authType, socket);
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            delegate.checkClientTrusted(chain, authType, engine);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            delegate.checkServerTrusted(chain, authType, engine);
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            delegate.checkClientTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            delegate.checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return delegate.getAcceptedIssuers();
+        }
+    }
+}
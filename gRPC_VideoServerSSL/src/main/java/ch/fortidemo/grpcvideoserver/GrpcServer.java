@@ -1,15 +1,12 @@
 package ch.fortidemo.grpcvideoserver;
 
 import io.grpc.Server;
-import io.grpc.netty.shaded.io.grpc.netty.GrpcSslContexts;
+import io.grpc.ServerInterceptors;
 import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
 import io.grpc.netty.shaded.io.netty.handler.ssl.SslContext;
-import io.grpc.netty.shaded.io.netty.handler.ssl.ClientAuth;
-import io.grpc.netty.shaded.io.netty.channel.epoll.Epoll;
-import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
-import io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
-import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.grpc.netty.shaded.io.netty.channel.epoll.EpollServerSocketChannel;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
@@ -17,14 +14,39 @@ import org.springframework.stereotype.Service;
 import javax.net.ssl.SSLException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class GrpcServer {
     private Server server;
     private final VideoServiceImpl videoService;
-
-    public GrpcServer(VideoServiceImpl videoService) {
+    private final MetricsServerInterceptor metricsInterceptor;
+    private final AdmissionControlInterceptor admissionControl;
+    private final BandwidthShaper bandwidthShaper;
+    private final ResponseCompression responseCompression;
+    private final NettyServerFactory serverFactory;
+    private final TlsContextFactory tlsContextFactory;
+    private final TlsProperties tlsProperties;
+    private final GrpcServerProperties properties;
+    private final ApplicationEventPublisher eventPublisher;
+    private CertificateReloader certificateReloader;
+
+    public GrpcServer(VideoServiceImpl videoService, MetricsServerInterceptor metricsInterceptor,
+                      AdmissionControlInterceptor admissionControl, BandwidthShaper bandwidthShaper,
+                      ResponseCompression responseCompression, NettyServerFactory serverFactory,
+                      TlsContextFactory tlsContextFactory, TlsProperties tlsProperties, GrpcServerProperties properties,
+                      ApplicationEventPublisher eventPublisher) {
         this.videoService = videoService;
+        this.metricsInterceptor = metricsInterceptor;
+        this.admissionControl = admissionControl;
+        this.bandwidthShaper = bandwidthShaper;
+        this.responseCompression = responseCompression;
+        this.serverFactory = serverFactory;
+        this.tlsContextFactory = tlsContextFactory;
+        this.tlsProperties = tlsProperties;
+        this.properties = properties;
+        this.eventPublisher = eventPublisher;
     }
 
     public void start() throws IOException {
@@ -32,39 +54,26 @@ public class GrpcServer {
         System.setProperty("io.grpc.internal.DontEnableCensusTracing", "true");
         System.out.println("🔐 Starting gRPC Server with TLS...");
 
-        // 🚀 Force Netty to use NIO on macOS to prevent Epoll issues
-        if (!isLinux()) {
-            System.setProperty("io.grpc.netty.shaded.io.netty.transport.noNative", "true");
-        }
-
         // 🚀 Disable gRPC Census Tracing to prevent missing class issues
         System.setProperty("io.grpc.internal.DontEnableTracing", "true");
 
-        // ✅ Load TLS certificates
-        Resource certResource = new ClassPathResource("certs/server.crt");
-        Resource keyResource = new ClassPathResource("certs/server.key");
-        Resource caCertResource = new ClassPathResource("certs/ca.crt"); // Optional for mTLS
+        try {
+            SslContext sslContext = createSslContext();
 
-        try (InputStream certChainStream = certResource.getInputStream();
-             InputStream privateKeyStream = keyResource.getInputStream();
-             InputStream trustCertStream = caCertResource.getInputStream()) {
-
-            // ✅ Use SSL context with InputStreams
-            SslContext sslContext = GrpcSslContexts.forServer(certChainStream, privateKeyStream)
-                    .trustManager(trustCertStream) // Trust CA (for mTLS)
-                    .clientAuth(ClientAuth.NONE) // Set to REQUIRED for mTLS
-                    .protocols("TLSv1.2") // Ensure compatibility
-                    .build();
-
-            // ✅ Select transport dynamically
-            NettyServerBuilder serverBuilder = createServerBuilder(9090)
+            // ✅ Transport, event loops and flow control come from grpc.server.*
+            NettyServerBuilder serverBuilder = serverFactory.newServerBuilder()
                     .sslContext(sslContext)
-                    .addService(videoService);
+                    // ✅ Metrics see every call, including refused ones; the shaper then notes the client
+                    .addService(ServerInterceptors.intercept(videoService, bandwidthShaper, admissionControl,
+                            metricsInterceptor))
+                    .compressorRegistry(responseCompression.getCompressorRegistry());
 
             server = serverBuilder.build();
             server.start();
 
-            System.out.println("✅ gRPC Server is running with TLS on port 9090...");
+            System.out.println("✅ gRPC Server is running with TLS on port " + properties.getPort() + "...");
+            // ✅ Spring only marks the app ready after this runner returns, which it never does
+            setReadiness(ReadinessState.ACCEPTING_TRAFFIC);
 
             // ✅ Handle server termination properly
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -78,35 +87,71 @@ public class GrpcServer {
                 System.err.println("⛔ gRPC Server interrupted: " + e.getMessage());
                 Thread.currentThread().interrupt();
             }
+            serverFactory.shutdown();
         } catch (SSLException e) {
             System.err.println("❌ [ERROR] SSL Exception: " + e.getMessage());
             throw new RuntimeException(e);
         }
     }
 
+    // Drain: fail the readiness probe, refuse new calls, send GOAWAY and give active streams the drain timeout
+    // to finish before the rest are cancelled
     public void stop() {
         if (server != null) {
+            setReadiness(ReadinessState.REFUSING_TRAFFIC);
+            admissionControl.startDraining();
             server.shutdown();
+            System.out.printf("🚰 Draining %d active video streams for up to %ds...%n",
+                    admissionControl.getActiveStreams(), properties.getDrainTimeout().toSeconds());
+            try {
+                if (!server.awaitTermination(properties.getDrainTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                    System.out.println("⏱️ Drain timeout reached, cancelling " + admissionControl.getActiveStreams()
+                            + " remaining streams");
+                    server.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                server.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (certificateReloader != null) {
+            try {
+                certificateReloader.stop();
+            } catch (IOException e) {
+                System.err.println("❌ Error stopping the certificate watcher: " + e.getMessage());
+            }
         }
     }
 
-    private NettyServerBuilder createServerBuilder(int port) {
-        if (isLinux() && Epoll.isAvailable()) {
-            System.out.println("🐧 Using Epoll for gRPC transport on Linux...");
-            return NettyServerBuilder.forPort(port)
-                    .channelType(EpollServerSocketChannel.class)
-                    .bossEventLoopGroup(new EpollEventLoopGroup())
-                    .workerEventLoopGroup(new EpollEventLoopGroup());
-        } else {
-            System.out.println("🍏 Using NIO for gRPC transport on macOS...");
-            return NettyServerBuilder.forPort(port)
-                    .channelType(NioServerSocketChannel.class)
-                    .bossEventLoopGroup(new NioEventLoopGroup())
-                    .workerEventLoopGroup(new NioEventLoopGroup());
+    // The shutdown hook races with Spring closing the context, which may already have gone
+    private void setReadiness(ReadinessState state) {
+        try {
+            AvailabilityChangeEvent.publish(eventPublisher, this, state);
+        } catch (RuntimeException e) {
+            System.err.println("⚠️ Could not publish readiness " + state + ": " + e.getMessage());
         }
     }
 
-    private boolean isLinux() {
-        return System.getProperty("os.name").toLowerCase().contains("linux");
+    // ✅ Provider, protocols and session resumption come from grpc.server.tls.*
+    private SslContext createSslContext() throws IOException {
+        if (tlsProperties.getCertChain() != null) {
+            // ✅ Certificates from the file system, swapped in for new handshakes when they change
+            certificateReloader = new CertificateReloader(Path.of(tlsProperties.getCertChain()),
+                    Path.of(tlsProperties.getPrivateKey()),
+                    tlsProperties.getTrustCerts() == null ? null : Path.of(tlsProperties.getTrustCerts()));
+            certificateReloader.start();
+            return tlsContextFactory.build(certificateReloader);
+        }
+
+        // ✅ Load TLS certificates
+        Resource certResource = new ClassPathResource("certs/server.crt");
+        Resource keyResource = new ClassPathResource("certs/server.key");
+        Resource caCertResource = new ClassPathResource("certs/ca.crt"); // Optional for mTLS
+
+        try (InputStream certChainStream = certResource.getInputStream();
+             InputStream privateKeyStream = keyResource.getInputStream();
+             InputStream trustCertStream = caCertResource.getInputStream()) {
+            return tlsContextFactory.build(certChainStream, privateKeyStream, trustCertStream);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,192 @@
+package ch.fortidemo.grpcvideoserver;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "grpc.server")
+public class GrpcServerProperties {
+
+    // Where gRPC runs call handlers and onReady callbacks, and with them all file reads of a stream.
+    // The Netty event loops only ever do network work in both modes.
+    public enum Executor {
+        CACHED, // gRPC default: a cached pool of platform threads
+        VIRTUAL // one virtual thread per task, so a stream blocked on a slow disk does not hold a platform thread
+    }
+
+    private int port = 9090;
+    private Executor executor = Executor.CACHED;
+
+    // Event loops; 0 worker threads = Netty default of two per core
+    private int bossThreads = 1;
+    private int workerThreads = 0;
+    private boolean epollEdgeTriggered = true;
+
+    // Socket options; null leaves the kernel default (and its autotuning) in place
+    private DataSize sendBufferSize;
+    private DataSize receiveBufferSize;
+    private boolean tcpNoDelay = true;
+
+    // HTTP/2 flow control and limits
+    private DataSize flowControlWindow = DataSize.ofMegabytes(16);
+    private boolean flowControlAutoTune = true; // grow the window towards the measured bandwidth-delay product
+    private int maxConcurrentCallsPerConnection = Integer.MAX_VALUE;
+    private DataSize maxInboundMessageSize = DataSize.ofMegabytes(10);
+
+    // Admission control and graceful shutdown
+    private int maxConcurrentStreams = 0; // video streams across all connections, 0 = unlimited
+    private Duration drainTimeout = Duration.ofSeconds(30); // how long active streams may finish after GOAWAY
+
+    // Keepalive: server pings idle connections, and the fastest client pings it tolerates
+    private Duration keepAliveTime = Duration.ofHours(2);
+    private Duration keepAliveTimeout = Duration.ofSeconds(20);
+    private Duration permitKeepAliveTime = Duration.ofSeconds(10);
+    private boolean permitKeepAliveWithoutCalls = true;
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public int getBossThreads() {
+        return bossThreads;
+    }
+
+    public void setBossThreads(int bossThreads) {
+        this.bossThreads = bossThreads;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public boolean isEpollEdgeTriggered() {
+        return epollEdgeTriggered;
+    }
+
+    public void setEpollEdgeTriggered(boolean epollEdgeTriggered) {
+        this.epollEdgeTriggered = epollEdgeTriggered;
+    }
+
+    public DataSize getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public void setSendBufferSize(DataSize sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    public DataSize getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public void setReceiveBufferSize(DataSize receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    public DataSize getFlowControlWindow() {
+        return flowControlWindow;
+    }
+
+    public void setFlowControlWindow(DataSize flowControlWindow) {
+        this.flowControlWindow = flowControlWindow;
+    }
+
+    public boolean isFlowControlAutoTune() {
+        return flowControlAutoTune;
+    }
+
+    public void setFlowControlAutoTune(boolean flowControlAutoTune) {
+        this.flowControlAutoTune = flowControlAutoTune;
+    }
+
+    public int getMaxConcurrentCallsPerConnection() {
+        return maxConcurrentCallsPerConnection;
+    }
+
+    public void setMaxConcurrentCallsPerConnection(int maxConcurrentCallsPerConnection) {
+        this.maxConcurrentCallsPerConnection = maxConcurrentCallsPerConnection;
+    }
+
+    public DataSize getMaxInboundMessageSize() {
+        return maxInboundMessageSize;
+    }
+
+    public void setMaxInboundMessageSize(DataSize maxInboundMessageSize) {
+        this.maxInboundMessageSize = maxInboundMessageSize;
+    }
+
+    public int getMaxConcurrentStreams() {
+        return maxConcurrentStreams;
+    }
+
+    public void setMaxConcurrentStreams(int maxConcurrentStreams) {
+        this.maxConcurrentStreams = maxConcurrentStreams;
+    }
+
+    public Duration getDrainTimeout() {
+        return drainTimeout;
+    }
+
+    public void setDrainTimeout(Duration drainTimeout) {
+        this.drainTimeout = drainTimeout;
+    }
+
+    public Duration getKeepAliveTime() {
+        return keepAliveTime;
+    }
+
+    public void setKeepAliveTime(Duration keepAliveTime) {
+        this.keepAliveTime = keepAliveTime;
+    }
+
+    public Duration getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    public void setKeepAliveTimeout(Duration keepAliveTimeout) {
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    public Duration getPermitKeepAliveTime() {
+        return permitKeepAliveTime;
+    }
+
+    public void setPermitKeepAliveTime(Duration permitKeepAliveTime) {
+        this.permitKeepAliveTime = permitKeepAliveTime;
+    }
+
+    public boolean isPermitKeepAliveWithoutCalls() {
+        return permitKeepAliveWithoutCalls;
+    }
+
+    public void setPermitKeepAliveWithoutCalls(boolean permitKeepAliveWithoutCalls) {
+        this.permitKeepAliveWithoutCalls = permitKeepAliveWithoutCalls;
+    }
+}
@@ -0,0 +1,150 @@
+package ch.fortidemo.grpcvideoserver;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Streaming instrumentation that replaces the per-chunk console output. Both switches can be flipped at
+// runtime over JMX (ch.fortidemo.grpcvideoserver:type=StreamMetrics, e.g. with jconsole). When they are
+// off the streaming loop pays two volatile reads per chunk and never calls System.nanoTime() for them.
+@Component
+@ManagedResource(objectName = "ch.fortidemo.grpcvideoserver:type=StreamMetrics")
+public class StreamMetrics {
+    private volatile boolean enabled;
+    private volatile boolean debugLog;
+    private volatile long debugLogIntervalNanos;
+    private final AtomicLong nextDebugLog = new AtomicLong(System.nanoTime());
+
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder chunks = new LongAdder();
+    private final LongAdder streams = new LongAdder();
+    private final Histogram chunkSendNanos = new Histogram();
+    private final Histogram streamDurationNanos = new Histogram();
+
+    @Autowired
+    public StreamMetrics(VideoConfig videoConfig) {
+        this(videoConfig.isStreamMetrics(), videoConfig.isDebugLog(), videoConfig.getDebugLogInterval().toMillis());
+    }
+
+    public StreamMetrics(boolean enabled, boolean debugLog, long debugLogIntervalMillis) {
+        this.enabled = enabled;
+        this.debugLog = debugLog;
+        this.debugLogIntervalNanos = TimeUnit.MILLISECONDS.toNanos(debugLogIntervalMillis);
+    }
+
+    @ManagedAttribute(description = "Record counters and histograms")
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @ManagedAttribute(description = "Print sampled per-chunk debug lines")
+    public boolean isDebugLog() {
+        return debugLog;
+    }
+
+    @ManagedAttribute
+    public void setDebugLog(boolean debugLog) {
+        this.debugLog = debugLog;
+    }
+
+    @ManagedAttribute(description = "Minimum time between two debug lines")
+    public long getDebugLogIntervalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(debugLogIntervalNanos);
+    }
+
+    @ManagedAttribute
+    public void setDebugLogIntervalMillis(long millis) {
+        this.debugLogIntervalNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    // True for at most one caller per debug log interval, across all streams
+    public boolean debugLogPermit() {
+        if (!debugLog) {
+            return false;
+        }
+        long now = System.nanoTime();
+        long next = nextDebugLog.get();
+        return now - next >= 0 && nextDebugLog.compareAndSet(next, now + debugLogIntervalNanos);
+    }
+
+    public void recordChunk(int length, long sendNanos) {
+        bytes.add(length);
+        chunks.increment();
+        chunkSendNanos.record(sendNanos);
+    }
+
+    public void recordStream(long durationNanos) {
+        streams.increment();
+        streamDurationNanos.record(durationNanos);
+    }
+
+    @ManagedAttribute
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @ManagedAttribute
+    public long getChunks() {
+        return chunks.sum();
+    }
+
+    @ManagedAttribute
+    public long getStreams() {
+        return streams.sum();
+    }
+
+    @ManagedAttribute
+    public double getChunkSendMeanMicros() {
+        return chunkSendNanos.getMean() / 1_000.0;
+    }
+
+    @ManagedAttribute
+    public double getChunkSendP99Micros() {
+        return chunkSendNanos.getPercentile(0.99) / 1_000.0;
+    }
+
+    @ManagedAttribute
+    public double getStreamDurationP50Millis() {
+        return streamDurationNanos.getPercentile(0.50) / 1_000_000.0;
+    }
+
+    @ManagedAttribute
+    public double getStreamDurationP99Millis() {
+        return streamDurationNanos.getPercentile(0.99) / 1_000_000.0;
+    }
+
+    public Histogram getChunkSendNanos() {
+        return chunkSendNanos;
+    }
+
+    public Histogram getStreamDurationNanos() {
+        return streamDurationNanos;
+    }
+
+    @ManagedOperation(description = "Reset all counters and histograms")
+    public void reset() {
+        bytes.reset();
+        chunks.reset();
+        streams.reset();
+        chunkSendNanos.reset();
+        streamDurationNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("streams=%d, chunks=%d, bytes=%.2f MB, chunk send mean=%.1f µs p99=%.1f µs, stream p50=%.1f ms p99=%.1f ms",
+                getStreams(), getChunks(), getBytes() / (1024.0 * 1024.0), getChunkSendMeanMicros(), getChunkSendP99Micros(),
+                getStreamDurationP50Millis(), getStreamDurationP99Millis());
+    }
+}
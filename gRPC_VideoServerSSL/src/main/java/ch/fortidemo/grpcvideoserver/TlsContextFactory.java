@@ -0,0 +1,115 @@
+package ch.fortidemo.grpcvideoserver;
+
+import io.grpc.netty.shaded.io.grpc.netty.GrpcSslContexts;
+import io.grpc.netty.shaded.io.netty.handler.ssl.ClientAuth;
+import io.grpc.netty.shaded.io.netty.handler.ssl.OpenSsl;
+import io.grpc.netty.shaded.io.netty.handler.ssl.OpenSslSessionContext;
+import io.grpc.netty.shaded.io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslContext;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslContextBuilder;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslProvider;
+import org.springframework.stereotype.Component;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+// Builds the server SslContext from grpc.server.tls.*. BoringSSL (netty-tcnative, bundled with
+// grpc-netty-shaded) encrypts bulk data with far less CPU than the JDK provider, and TLS 1.3 saves a round
+// trip per handshake. The session cache and session tickets let reconnecting viewers resume.
+@Component
+public class TlsContextFactory {
+    private final TlsProperties properties;
+
+    public TlsContextFactory(TlsProperties properties) {
+        this.properties = properties;
+    }
+
+    // trustCerts may be null when clients are not authenticated
+    public SslContext build(InputStream certChain, InputStream privateKey, InputStream trustCerts) throws IOException {
+        SslContextBuilder builder = SslContextBuilder.forServer(certChain, privateKey);
+        if (trustCerts != null) {
+            builder.trustManager(trustCerts); // Trust CA (for mTLS)
+        }
+        return configure(builder);
+    }
+
+    // Key material from the reloader is looked up per handshake, so new connections pick up rotated certificates
+    public SslContext build(CertificateReloader credentials) throws IOException {
+        SslContextBuilder builder = SslContextBuilder.forServer(credentials.getKeyManager());
+        if (credentials.getTrustManager() != null) {
+            builder.trustManager(credentials.getTrustManager()); // Trust CA (for mTLS)
+        }
+        return configure(builder);
+    }
+
+    private SslContext configure(SslContextBuilder builder) throws IOException {
+        SslProvider provider = selectProvider();
+        List<String> protocols = properties.getProtocols().stream()
+                .filter(protocol -> !protocol.equals("TLSv1.3") || SslProvider.isTlsv13Supported(provider))
+                .toList();
+
+        SslContext sslContext = GrpcSslContexts.configure(builder, provider)
+                .clientAuth(ClientAuth.NONE) // Set to REQUIRED for mTLS
+                .protocols(protocols)
+                .sessionCacheSize(properties.getSessionCacheSize())
+                .sessionTimeout(properties.getSessionTimeout().toSeconds())
+                .build();
+
+        // Read once; unlike the certificates, new ticket keys need a restart
+        if (properties.getTicketKeyFile() != null) {
+            if (sslContext.sessionContext() instanceof OpenSslSessionContext sessionContext) {
+                sessionContext.setTicketKeys(readTicketKeys(Path.of(properties.getTicketKeyFile())));
+            } else {
+                System.out.println("⚠️ grpc.server.tls.ticket-key-file is only used by the OpenSSL provider, ignoring it");
+            }
+        }
+
+        System.out.printf("🔐 TLS provider: %s, protocols=%s, session cache=%d, session timeout=%ds%n",
+                provider == SslProvider.JDK ? "JDK" : OpenSsl.versionString(), protocols,
+                properties.getSessionCacheSize(), properties.getSessionTimeout().toSeconds());
+        return sslContext;
+    }
+
+    private SslProvider selectProvider() throws SSLException {
+        switch (properties.getProvider()) {
+            case JDK:
+                return SslProvider.JDK;
+            case OPENSSL:
+                if (!OpenSsl.isAvailable()) {
+                    throw new SSLException("OpenSSL provider requested but not available", OpenSsl.unavailabilityCause());
+                }
+                return SslProvider.OPENSSL;
+            default:
+                if (OpenSsl.isAvailable()) {
+                    return SslProvider.OPENSSL;
+                }
+                System.out.println("⚠️ OpenSSL not available, falling back to the JDK TLS provider: "
+                        + OpenSsl.unavailabilityCause().getMessage());
+                return SslProvider.JDK;
+        }
+    }
+
+    // Same layout as nginx' ssl_session_ticket_key, so all replicas behind a load balancer can share one file:
+    // 16 bytes key name, 16 bytes HMAC secret, 16 bytes AES key, repeated for keys that are still accepted
+    static OpenSslSessionTicketKey[] readTicketKeys(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        int size = OpenSslSessionTicketKey.TICKET_KEY_SIZE;
+        if (bytes.length == 0 || bytes.length % size != 0) {
+            throw new IOException("Ticket key file " + file + " must hold a multiple of " + size + " bytes");
+        }
+        OpenSslSessionTicketKey[] keys = new OpenSslSessionTicketKey[bytes.length / size];
+        for (int i = 0; i < keys.length; i++) {
+            int offset = i * size;
+            keys[i] = new OpenSslSessionTicketKey(
+                    Arrays.copyOfRange(bytes, offset, offset + 16),
+                    Arrays.copyOfRange(bytes, offset + 16, offset + 32),
+                    Arrays.copyOfRange(bytes, offset + 32, offset + 48));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,95 @@
+package ch.fortidemo.grpcvideoserver;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+@Component
+@ConfigurationProperties(prefix = "grpc.server.tls")
+public class TlsProperties {
+
+    public enum Provider {
+        AUTO,    // BoringSSL from the netty-tcnative bundled with grpc-netty-shaded when it loads, else the JDK
+        OPENSSL, // fail at startup if BoringSSL cannot be loaded
+        JDK
+    }
+
+    // PEM files on disk, reloaded when they change; unset = certs/ from the classpath, loaded once
+    private String certChain;
+    private String privateKey;
+    private String trustCerts;
+
+    private Provider provider = Provider.AUTO;
+    private List<String> protocols = List.of("TLSv1.3", "TLSv1.2"); // versions the provider lacks are dropped
+
+    // Session resumption: a returning viewer skips the certificate exchange and key agreement
+    private int sessionCacheSize = 20_000;
+    private Duration sessionTimeout = Duration.ofHours(1);
+    private String ticketKeyFile; // 48-byte keys, first one encrypts; null = random keys per process (OpenSSL only)
+
+    public String getCertChain() {
+        return certChain;
+    }
+
+    public void setCertChain(String certChain) {
+        this.certChain = certChain;
+    }
+
+    public String getPrivateKey() {
+        return privateKey;
+    }
+
+    public void setPrivateKey(String privateKey) {
+        this.privateKey = privateKey;
+    }
+
+    public String getTrustCerts() {
+        return trustCerts;
+    }
+
+    public void setTrustCerts(String trustCerts) {
+        this.trustCerts = trustCerts;
+    }
+
+    public Provider getProvider() {
+        return provider;
+    }
+
+    public void setProvider(Provider provider) {
+        this.provider = provider;
+    }
+
+    public List<String> getProtocols() {
+        return protocols;
+    }
+
+    public void setProtocols(List<String> protocols) {
+        this.protocols = protocols;
+    }
+
+    public int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    public void setSessionCacheSize(int sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+    }
+
+    public Duration getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    public void setSessionTimeout(Duration sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    public String getTicketKeyFile() {
+        return ticketKeyFile;
+    }
+
+    public void setTicketKeyFile(String ticketKeyFile) {
+        this.ticketKeyFile = ticketKeyFile;
+    }
+}
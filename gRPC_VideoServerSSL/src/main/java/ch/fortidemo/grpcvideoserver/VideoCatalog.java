@@ -0,0 +1,160 @@
+package ch.fortidemo.grpcvideoserver;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// In-memory index of the files in video.file.path. It is built once at startup and kept current by a
+// WatchService, so a stream lookup is a single map access without any filesystem calls.
+@Service
+public class VideoCatalog {
+    private final Path directory;
+    private final ConcurrentHashMap<String, VideoAsset> assets = new ConcurrentHashMap<>();
+    private WatchService watchService;
+
+    public VideoCatalog(@Value("${VIDEO_FILE_PATH:/root/video/}") String videoFilePath) {
+        this.directory = Paths.get(videoFilePath).toAbsolutePath();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!Files.isDirectory(directory)) {
+            System.err.println("❌ Error: Video directory not found: " + directory);
+            return;
+        }
+        rescan();
+        System.out.printf("📚 Video catalog indexed %d file(s) in %s%n", assets.size(), directory);
+
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            System.err.println("❌ Cannot watch " + directory + ", catalog will not pick up changes: " + e.getMessage());
+            return;
+        }
+        Thread watcher = new Thread(this::watch, "video-catalog-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+        synchronized (this) {
+            assets.values().forEach(VideoAsset::release);
+            assets.clear();
+        }
+    }
+
+    public VideoAsset find(String name) {
+        return assets.get(name);
+    }
+
+    // Looks up and retains an asset for streaming; the caller must release() it when done
+    public VideoAsset acquire(String name) {
+        VideoAsset asset;
+        do {
+            asset = assets.get(name);
+        } while (asset != null && !asset.retain()); // lost a race with a replacement, look again
+        return asset;
+    }
+
+    public List<VideoAsset> list() {
+        List<VideoAsset> list = new ArrayList<>(assets.values());
+        list.sort(Comparator.comparing(VideoAsset::getName));
+        return list;
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        rescan();
+                    } else {
+                        refresh(event.context().toString());
+                    }
+                }
+                if (!key.reset()) {
+                    System.err.println("❌ Video directory is no longer accessible: " + directory);
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Catalog stopped
+        }
+    }
+
+    private synchronized void rescan() {
+        Set<String> present = new HashSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                present.add(file.getFileName().toString());
+            }
+        } catch (IOException e) {
+            System.err.println("❌ Error scanning " + directory + ": " + e.getMessage());
+            return;
+        }
+        present.forEach(this::refresh);
+        new ArrayList<>(assets.keySet()).stream()
+                .filter(name -> !present.contains(name))
+                .forEach(this::remove);
+    }
+
+    private synchronized void refresh(String name) {
+        Path file = directory.resolve(name);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (attributes.isRegularFile() && !name.startsWith(".")) {
+                long modified = attributes.lastModifiedTime().toMillis();
+                VideoAsset current = assets.get(name);
+                if (current != null && current.getSize() == attributes.size() && current.getModified() == modified) {
+                    return;
+                }
+                VideoAsset previous = assets.put(name, VideoAsset.open(file, attributes.size(), modified));
+                if (previous != null) {
+                    previous.release();
+                }
+                System.out.printf("🎬 Indexed %s (%.2f MB)%n", name, attributes.size() / (1024.0 * 1024.0));
+                return;
+            }
+        } catch (NoSuchFileException e) {
+            // Deleted or renamed away, drop it below
+        } catch (IOException e) {
+            System.err.println("❌ Error indexing " + file + ": " + e.getMessage());
+        }
+        remove(name);
+    }
+
+    private synchronized void remove(String name) {
+        VideoAsset removed = assets.remove(name);
+        if (removed != null) {
+            removed.release();
+            System.out.println("🗑 Removed from catalog: " + name);
+        }
+    }
+}
@@ -2,6 +2,10 @@ package ch.fortidemo.grpcvideoserver;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
 
 @Component
 @ConfigurationProperties(prefix = "video")
@@ -9,6 +13,22 @@ public class VideoConfig {
 
     private String filePath;
     private String fileName;
+    private boolean mappedIo = true; // false = read-and-copy fallback
+    private DataSize cacheSize = DataSize.ofMegabytes(256); // shared segment cache budget
+    private DataSize chunkSize = DataSize.ofKilobytes(64); // every stream starts here and adapts
+    private DataSize minChunkSize = DataSize.ofKilobytes(16);
+    private DataSize maxChunkSize = DataSize.ofMegabytes(1);
+    private boolean streamMetrics; // initial state, can be switched at runtime over JMX
+    private boolean debugLog;
+    private Duration debugLogInterval = Duration.ofSeconds(1);
+    private int compressionLevel = 1; // gzip level for text-like responses, 0 = never compress
+    private DataSize compressionMinSize = DataSize.ofKilobytes(1); // smaller messages go out as is
+    private List<String> compressibleExtensions = List.of("vtt", "srt", "m3u8", "mpd", "json", "txt", "xml");
+    // Egress limits in bytes per second, null = unlimited; shared fairly among the streams they cover
+    private DataSize streamRateLimit;
+    private DataSize clientRateLimit;
+    private DataSize totalRateLimit;
+    private String clientIdHeader; // request header naming the client, null = its IP address
 
     public String getFilePath() {
         return filePath;
@@ -25,4 +45,124 @@ public class VideoConfig {
     public void setFileName(String fileName) {
         this.fileName = fileName;
     }
+
+    public boolean isMappedIo() {
+        return mappedIo;
+    }
+
+    public void setMappedIo(boolean mappedIo) {
+        this.mappedIo = mappedIo;
+    }
+
+    public DataSize getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(DataSize cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public DataSize getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(DataSize chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public DataSize getMinChunkSize() {
+        return minChunkSize;
+    }
+
+    public void setMinChunkSize(DataSize minChunkSize) {
+        this.minChunkSize = minChunkSize;
+    }
+
+    public DataSize getMaxChunkSize() {
+        return maxChunkSize;
+    }
+
+    public void setMaxChunkSize(DataSize maxChunkSize) {
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    public boolean isStreamMetrics() {
+        return streamMetrics;
+    }
+
+    public void setStreamMetrics(boolean streamMetrics) {
+        this.streamMetrics = streamMetrics;
+    }
+
+    public boolean isDebugLog() {
+        return debugLog;
+    }
+
+    public void setDebugLog(boolean debugLog) {
+        this.debugLog = debugLog;
+    }
+
+    public Duration getDebugLogInterval() {
+        return debugLogInterval;
+    }
+
+    public void setDebugLogInterval(Duration debugLogInterval) {
+        this.debugLogInterval = debugLogInterval;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public DataSize getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+    public void setCompressionMinSize(DataSize compressionMinSize) {
+        this.compressionMinSize = compressionMinSize;
+    }
+
+    public List<String> getCompressibleExtensions() {
+        return compressibleExtensions;
+    }
+
+    public void setCompressibleExtensions(List<String> compressibleExtensions) {
+        this.compressibleExtensions = compressibleExtensions;
+    }
+
+    public DataSize getStreamRateLimit() {
+        return streamRateLimit;
+    }
+
+    public void setStreamRateLimit(DataSize streamRateLimit) {
+        this.streamRateLimit = streamRateLimit;
+    }
+
+    public DataSize getClientRateLimit() {
+        return clientRateLimit;
+    }
+
+    public void setClientRateLimit(DataSize clientRateLimit) {
+        this.clientRateLimit = clientRateLimit;
+    }
+
+    public DataSize getTotalRateLimit() {
+        return totalRateLimit;
+    }
+
+    public void setTotalRateLimit(DataSize totalRateLimit) {
+        this.totalRateLimit = totalRateLimit;
+    }
+
+    public String getClientIdHeader() {
+        return clientIdHeader;
+    }
+
+    public void setClientIdHeader(String clientIdHeader) {
+        this.clientIdHeader = clientIdHeader;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,344 @@
+package ch.fortidemo.grpcvideoserver;
+
+import ch.fortidemo.grpc.video.StreamHeader;
+import ch.fortidemo.grpc.video.VideoChunk;
+import ch.fortidemo.grpc.video.VideoRequest;
+import com.google.protobuf.ByteString;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+// Streams one byte range of one file to one call. Chunks are only produced while the transport reports
+// isReady(), so a slow client holds at most a couple of chunks on the server instead of the whole file.
+// The chunk size is picked per stream by a ChunkSizer from how fast the transport drains. A stream whose
+// bandwidth budget is spent pauses the same way and is resumed by the BandwidthShaper.
+// A stream that asks for checksums gets a CRC32C of every chunk, computed over the cached segments as the chunk
+// is cut from them, and the SHA-256 of the file on its last chunk. The first stream of the whole file hashes it
+// on the way out, in file order, and leaves the digest on the asset for every later stream.
+// A stream that asks for moov_first of an MP4 whose moov box is behind its media data gets the moov right after
+// the ftyp, so the client can start playing as soon as the first media data is in; see Mp4Index.
+public class VideoStreamer implements Runnable {
+    private final ServerCallStreamObserver<VideoChunk> responseObserver;
+    private final SegmentCache segmentCache;
+    private final StreamMetrics metrics;
+    private final VideoAsset asset;
+    private final String fileName;
+    private final String path;
+    private final long modified;
+    private final long size;
+    private final ChunkSizer chunkSizer;
+    private final boolean mappedIo;
+    private final BandwidthShaper.Budget budget;
+    private final long startTime = System.nanoTime();
+    // Not synchronized: a virtual thread blocked on file I/O inside a monitor would pin its carrier thread
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long start;
+    private long end;
+    private List<Mp4Index.Range> order; // pieces of [start, end) in the order they are sent
+    private int part;
+    private long partEnd;
+    private long offset;
+    private long sent;
+    private long chunkIndex;
+    private long segmentOffset = -1;
+    private ByteString segment;
+    private boolean headerSent;
+    private boolean checksums;
+    private CRC32C crc;
+    private MessageDigest digest;
+    private long hashed; // the digest covers the file up to here
+    private final List<ByteString> hashedLater = new ArrayList<>(); // sent ahead of hashed, i.e. the moov
+    private long hashedLaterStart = -1;
+    private boolean finished;
+    private volatile boolean resumePending;
+
+    // Takes over a retained asset and an open budget and releases both when the stream ends
+    public VideoStreamer(VideoAsset asset, ChunkSizer chunkSizer, boolean mappedIo, SegmentCache segmentCache,
+                         StreamMetrics metrics, BandwidthShaper.Budget budget,
+                         StreamObserver<VideoChunk> responseObserver) {
+        this.responseObserver = (ServerCallStreamObserver<VideoChunk>) responseObserver;
+        this.segmentCache = segmentCache;
+        this.metrics = metrics;
+        this.asset = asset;
+        this.fileName = asset.getName();
+        this.path = asset.getPath().toString();
+        this.modified = asset.getModified();
+        this.size = asset.getSize();
+        this.chunkSizer = chunkSizer;
+        this.mappedIo = mappedIo;
+        this.budget = budget;
+    }
+
+    public void start(VideoRequest request) {
+        if (request.hasIfRange() && !request.getIfRange().equals(asset.getEtag())) {
+            // The client's partial copy is of an older version, a range of the new one would not fit onto it
+            System.out.println("🔄 " + fileName + " changed since ETag " + request.getIfRange() + ", streaming all of it");
+            request = request.toBuilder().clearOffset().clearLength().build();
+        }
+        start = request.hasOffset() ? request.getOffset() : 0;
+        if (start < 0 || start > size) {
+            finish();
+            responseObserver.onError(Status.OUT_OF_RANGE
+                    .withDescription("Offset " + start + " outside " + fileName + " (" + size + " bytes)")
+                    .asRuntimeException());
+            return;
+        }
+        if (request.hasLength() && request.getLength() < 0) {
+            finish();
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("Negative length " + request.getLength())
+                    .asRuntimeException());
+            return;
+        }
+        end = request.hasLength() ? Math.min(size, start + request.getLength()) : size;
+        order = request.getMoovFirst() ? asset.getMp4Index().order(start, end) : List.of(new Mp4Index.Range(start, end));
+        if (order.size() > 1) {
+            System.out.printf("⏩ Sending the moov box of %s (%.2f MB) ahead of its media data%n",
+                    fileName, asset.getMp4Index().getMoov().length() / (1024.0 * 1024.0));
+        }
+        offset = order.get(0).start();
+        partEnd = order.get(0).end();
+        checksums = request.getChecksums();
+        if (checksums) {
+            crc = new CRC32C();
+            // The digest is of the file, so it can only be taken from a stream that sends all of it
+            if (start == 0 && end == size && asset.getSha256() == null) {
+                digest = sha256();
+            }
+        }
+
+        responseObserver.setOnCancelHandler(this::cancel);
+        // gRPC calls the handler every time the transport can accept more data again
+        responseObserver.setOnReadyHandler(this::onReady);
+        run();
+    }
+
+    @Override
+    public void run() {
+        lock.lock();
+        try {
+            while (!finished) {
+                if (offset >= partEnd && headerSent) {
+                    complete();
+                    return;
+                }
+                if (!responseObserver.isReady()) {
+                    chunkSizer.onBlocked(System.nanoTime());
+                    return; // resumed by the onReady handler
+                }
+                long delay = budget.delay(System.nanoTime());
+                if (delay > 0) {
+                    if (!resumePending) {
+                        resumePending = true;
+                        budget.resumeAfter(delay, this::resume);
+                    }
+                    return;
+                }
+                sendNextChunk();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Whatever broke, the asset and the budget are released and the call is closed with a status
+            System.err.println("❌ Error while streaming " + fileName + ": " + e);
+            finish();
+            responseObserver.onError(Status.INTERNAL
+                    .withDescription("Error while streaming " + fileName)
+                    .withCause(e)
+                    .asRuntimeException());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void sendNextChunk() throws IOException {
+        VideoChunk.Builder chunk = offset < partEnd
+                ? nextChunk()
+                : VideoChunk.newBuilder().setOffset(offset).setChunkIndex(chunkIndex++);
+        if (!headerSent) {
+            // The first chunk tells the client what it is about to receive, e.g. to preallocate or show a seek bar
+            chunk.setHeader(StreamHeader.newBuilder()
+                    .setTotalSize(size)
+                    .setOffset(start)
+                    .setLength(end - start)
+                    .setChunkSize(chunkSizer.getInitialSize())
+                    .setEtag(asset.getEtag())
+                    .setModifiedTime(modified));
+            headerSent = true;
+        }
+        int length = chunk.getData().size();
+        boolean lastPart = part == order.size() - 1;
+        if (checksums) {
+            addChecksums(chunk, lastPart && offset + length >= partEnd);
+        }
+        boolean measured = metrics.isEnabled();
+        long sendStart = measured ? System.nanoTime() : 0;
+        responseObserver.onNext(chunk.build());
+        long now = System.nanoTime();
+
+        offset += length;
+        sent += length;
+        if (offset >= partEnd && !lastPart) {
+            part++;
+            offset = order.get(part).start();
+            partEnd = order.get(part).end();
+        }
+        chunkSizer.onSent(length, now);
+        budget.consume(length);
+        if (measured) {
+            metrics.recordChunk(length, now - sendStart);
+        }
+        if (metrics.debugLogPermit()) {
+            System.out.printf("[DEBUG] Sent chunk of %s: %d bytes (%.2f MB / %.2f MB, %s)%n", fileName, length,
+                    sent / (1024.0 * 1024.0), (end - start) / (1024.0 * 1024.0), chunkSizer);
+        }
+    }
+
+    // Segments are cached on the fixed SEGMENT_SIZE grid and shared by all streams. A chunk is a rope of the
+    // segments it covers, cut with substring() where it starts or ends inside one; neither copies any bytes.
+    private VideoChunk.Builder nextChunk() throws IOException {
+        long chunkEnd = Math.min(partEnd, offset + chunkSizer.size());
+        ByteString data = ByteString.EMPTY;
+        for (long position = offset; position < chunkEnd; ) {
+            ByteString current = segmentAt(position);
+            long currentEnd = Math.min(segmentOffset + current.size(), chunkEnd);
+            if (position != segmentOffset || currentEnd != segmentOffset + current.size()) {
+                current = current.substring((int) (position - segmentOffset), (int) (currentEnd - segmentOffset));
+            }
+            data = data.concat(current);
+            position = currentEnd;
+        }
+        return VideoChunk.newBuilder()
+                .setData(data)
+                .setOffset(offset)
+                .setChunkIndex(chunkIndex++);
+    }
+
+    // The chunk is a rope over segments, mapped ones included; hashing its pieces in place copies nothing
+    private void addChecksums(VideoChunk.Builder chunk, boolean last) {
+        crc.reset();
+        for (ByteBuffer piece : chunk.getData().asReadOnlyByteBufferList()) {
+            crc.update(piece);
+        }
+        chunk.setCrc32C((int) crc.getValue());
+        if (digest != null) {
+            hash(chunk.getOffset(), chunk.getData());
+        }
+        if (last) {
+            if (digest != null && hashed == size) {
+                asset.setSha256(digest.digest());
+                digest = null;
+                System.out.println("🔏 Cached the SHA-256 of " + fileName);
+            }
+            byte[] sha256 = asset.getSha256();
+            if (sha256 != null) {
+                chunk.setFileSha256(ByteString.copyFrom(sha256));
+            }
+        }
+    }
+
+    // Feeds the digest in file order: a moov sent ahead waits until the media data before it has been hashed
+    private void hash(long position, ByteString data) {
+        if (data.isEmpty()) {
+            return;
+        }
+        if (position != hashed) {
+            if (hashedLaterStart < 0) {
+                hashedLaterStart = position;
+            }
+            hashedLater.add(data);
+            return;
+        }
+        update(data);
+        if (hashed == hashedLaterStart) {
+            hashedLater.forEach(this::update);
+            hashedLater.clear();
+            hashedLaterStart = -1;
+        }
+    }
+
+    private void update(ByteString data) {
+        for (ByteBuffer piece : data.asReadOnlyByteBufferList()) {
+            digest.update(piece);
+        }
+        hashed += data.size();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is missing from this JVM", e);
+        }
+    }
+
+    // Small chunks reuse the last segment instead of going back to the shared cache for every one of them
+    private ByteString segmentAt(long position) throws IOException {
+        long alignedOffset = position / SegmentCache.SEGMENT_SIZE * SegmentCache.SEGMENT_SIZE;
+        if (alignedOffset != segmentOffset) {
+            int length = (int) Math.min(SegmentCache.SEGMENT_SIZE, size - alignedOffset);
+            segment = segmentCache.get(new SegmentCache.SegmentKey(path, modified, alignedOffset),
+                    () -> asset.read(alignedOffset, length, mappedIo));
+            segmentOffset = alignedOffset;
+        }
+        return segment;
+    }
+
+    private void resume() {
+        resumePending = false;
+        run();
+    }
+
+    // Only the transport ends a stall: a budget timer firing meanwhile does not count towards the ready latency
+    private void onReady() {
+        lock.lock();
+        try {
+            chunkSizer.onReady(System.nanoTime());
+            run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void complete() {
+        finish();
+        long duration = System.nanoTime() - startTime;
+        if (metrics.isEnabled()) {
+            metrics.recordStream(duration);
+        }
+        double elapsedTime = duration / 1_000_000_000.0;
+        System.out.printf("✅ Video streaming completed: %s [%d-%d) in %.2f seconds (%.2f MB/s, %s)%n",
+                fileName, start, end, elapsedTime, chunkSizer.getMegabytesPerSecond(System.nanoTime()), chunkSizer);
+        System.out.println("🗄 Segment cache: " + segmentCache);
+        responseObserver.onCompleted();
+    }
+
+    private void cancel() {
+        lock.lock();
+        try {
+            if (!finished) {
+                System.out.printf("⚠️ Stream of %s cancelled by client after %.2f MB (%s)%n",
+                        fileName, sent / (1024.0 * 1024.0), chunkSizer);
+                finish();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void finish() {
+        if (!finished) {
+            finished = true;
+            asset.release();
+            budget.close();
+        }
+    }
+}
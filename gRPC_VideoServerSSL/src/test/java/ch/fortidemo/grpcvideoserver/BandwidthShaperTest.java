@@ -0,0 +1,114 @@
+package ch.fortidemo.grpcvideoserver;
+
+import ch.fortidemo.grpc.video.VideoChunk;
+import ch.fortidemo.grpc.video.VideoRequest;
+import ch.fortidemo.grpc.video.VideoServiceGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class BandwidthShaperTest {
+
+    private static final double MB = 1024 * 1024;
+
+    @TempDir
+    Path videoDir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private BandwidthShaper shaper;
+    private VideoCatalog catalog;
+    private Server server;
+    private ManagedChannel channel;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (channel != null) {
+            channel.shutdownNow();
+            server.shutdownNow();
+            catalog.stop();
+        }
+        if (shaper != null) {
+            shaper.stop();
+        }
+    }
+
+    @Test
+    void sharesCapacityMaxMinFair() {
+        double[] demands = {1, Double.POSITIVE_INFINITY, 6, Double.POSITIVE_INFINITY};
+        assertThat(BandwidthShaper.share(16, demands)).isEqualTo(5.0);
+        assertThat(demands).containsExactly(1, 5, 5, 5);
+
+        double[] modest = {1, 2};
+        assertThat(BandwidthShaper.share(16, modest)).isEqualTo(Double.POSITIVE_INFINITY);
+        assertThat(modest).containsExactly(1, 2);
+    }
+
+    @Test
+    void splitsTheLimitsAmongOpenStreams() {
+        VideoConfig config = new VideoConfig();
+        config.setStreamRateLimit(DataSize.ofMegabytes(4));
+        config.setClientRateLimit(DataSize.ofMegabytes(6));
+        config.setTotalRateLimit(DataSize.ofMegabytes(9));
+        shaper = new BandwidthShaper(config, registry);
+
+        // Outside a call every stream belongs to the same unknown client
+        BandwidthShaper.Budget first = shaper.open();
+        assertThat(first.getRate()).isEqualTo(4 * MB);
+        BandwidthShaper.Budget second = shaper.open();
+        BandwidthShaper.Budget third = shaper.open();
+        assertThat(third.getRate()).isEqualTo(2 * MB);
+        assertThat(registry.get("video.bandwidth.streams").gauge().value()).isEqualTo(3);
+
+        second.close();
+        third.close();
+        assertThat(first.getRate()).isEqualTo(4 * MB);
+    }
+
+    @Test
+    void streamIsPacedToItsLimit() throws Exception {
+        Files.write(videoDir.resolve("video.mp4"), new byte[1024 * 1024]);
+        catalog = new VideoCatalog(videoDir.toString());
+        catalog.start();
+        VideoConfig config = new VideoConfig();
+        config.setStreamRateLimit(DataSize.ofMegabytes(2));
+        shaper = new BandwidthShaper(config, registry);
+        VideoServiceImpl service = new VideoServiceImpl("video.mp4", config, new SegmentCache(0), catalog,
+                new StreamMetrics(false, false, 1000), new ResponseCompression(config), shaper);
+
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+                .addService(ServerInterceptors.intercept(service, shaper))
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).build();
+
+        long start = System.nanoTime();
+        Iterator<VideoChunk> chunks = VideoServiceGrpc.newBlockingStub(channel)
+                .streamVideo(VideoRequest.newBuilder().setFilename("video.mp4").build());
+        long received = 0;
+        while (chunks.hasNext()) {
+            received += chunks.next().getData().size();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        // 1 MB at 2 MB/s, less the first chunk that goes out on credit
+        assertThat(received).isEqualTo(1024 * 1024);
+        assertThat(seconds).isCloseTo(0.5, within(0.2));
+        assertThat(registry.get("video.bandwidth.throttled").timer().count()).isPositive();
+        assertThat(registry.get("video.bandwidth.streams").gauge().value()).isZero();
+    }
+}
@@ -0,0 +1,87 @@
+package ch.fortidemo.grpcvideoserver;
+
+import io.grpc.netty.shaded.io.netty.handler.ssl.util.SelfSignedCertificate;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.cert.X509Certificate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CertificateReloaderTest {
+
+    private static SelfSignedCertificate first;
+    private static SelfSignedCertificate second;
+
+    @TempDir
+    Path certDir;
+
+    private CertificateReloader reloader;
+
+    @BeforeAll
+    static void createCertificates() throws Exception {
+        first = new SelfSignedCertificate("first.example");
+        second = new SelfSignedCertificate("second.example");
+    }
+
+    @AfterAll
+    static void deleteCertificates() {
+        first.delete();
+        second.delete();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (reloader != null) {
+            reloader.stop();
+        }
+    }
+
+    @Test
+    void keepsTheCurrentCertificateUntilCertAndKeyMatchAgain() throws Exception {
+        install(first.certificate(), first.privateKey());
+        reloader = newReloader();
+        reloader.start();
+        X509Certificate loaded = reloader.getCertificate();
+        assertThat(reloader.reload()).isFalse(); // unchanged
+
+        // New certificate written, key not yet
+        install(second.certificate(), first.privateKey());
+        assertThat(reloader.reload()).isFalse();
+        assertThat(reloader.getCertificate()).isEqualTo(loaded);
+
+        install(second.certificate(), second.privateKey());
+        assertThat(reloader.reload()).isTrue();
+        assertThat(reloader.getCertificate()).isEqualTo(second.cert());
+    }
+
+    @Test
+    void watcherPicksUpRotatedFiles() throws Exception {
+        install(first.certificate(), first.privateKey());
+        reloader = newReloader();
+        reloader.start();
+
+        install(second.certificate(), second.privateKey());
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!reloader.getCertificate().equals(second.cert()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(reloader.getCertificate()).isEqualTo(second.cert());
+    }
+
+    private CertificateReloader newReloader() {
+        return new CertificateReloader(certDir.resolve("server.crt"), certDir.resolve("server.key"), null);
+    }
+
+    private void install(File certificate, File privateKey) throws Exception {
+        Files.copy(certificate.toPath(), certDir.resolve("server.crt"), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(privateKey.toPath(), certDir.resolve("server.key"), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,63 @@
+package ch.fortidemo.grpcvideoserver;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkSizerTest {
+
+    private static final int KB = 1024;
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void fastLinkGrowsChunksUpToTheMaximum() {
+        ChunkSizer sizer = new ChunkSizer(64 * KB, 16 * KB, 1024 * KB, 0);
+
+        // 1 GB/s with the transport always ready
+        long now = 0;
+        for (int i = 0; i < 100; i++) {
+            now += 10 * MS;
+            sizer.onSent(10 * 1024 * KB, now);
+        }
+
+        assertThat(sizer.size()).isEqualTo(1024 * KB);
+        assertThat(sizer.getLargest()).isEqualTo(1024 * KB);
+        assertThat(sizer.getInitialSize()).isEqualTo(64 * KB);
+    }
+
+    @Test
+    void slowLinkShrinksChunksDownToTheMinimum() {
+        ChunkSizer sizer = new ChunkSizer(64 * KB, 16 * KB, 1024 * KB, 0);
+
+        // 256 KB/s, every chunk waits 250 ms for the transport to become ready again
+        long now = 0;
+        for (int i = 0; i < 20; i++) {
+            sizer.onBlocked(now);
+            now += 250 * MS;
+            sizer.onReady(now);
+            sizer.onSent(64 * KB, now);
+        }
+
+        assertThat(sizer.size()).isEqualTo(16 * KB);
+        assertThat(sizer.getSmallest()).isEqualTo(16 * KB);
+        assertThat(sizer.getStalls()).isEqualTo(20);
+        assertThat(sizer.getAverageReadyLatencyMillis()).isEqualTo(250.0);
+    }
+
+    @Test
+    void steadyLinkKeepsItsChunkSize() {
+        ChunkSizer sizer = new ChunkSizer(64 * KB, 16 * KB, 1024 * KB, 0);
+
+        // 6.4 MB/s drains a 64 KB chunk in 10 ms, which is the target
+        long now = 0;
+        for (int i = 0; i < 100; i++) {
+            now += 10 * MS;
+            sizer.onSent(64 * KB, now);
+        }
+
+        assertThat(sizer.size()).isEqualTo(64 * KB);
+        assertThat(sizer.getAdjustments()).isZero();
+    }
+}
@@ -0,0 +1,47 @@
+package ch.fortidemo.grpcvideoserver;
+
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MappedVideoFileTest {
+
+    private static final long REGION_SIZE = 1L << 30;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void joinsTheRegionsOfASliceAcrossTheOneGigabyteBoundary() throws Exception {
+        // Sparse file just over one region, with marker bytes on both sides of the boundary
+        Path file = dir.resolve("large.mp4");
+        byte[] marker = {1, 2, 3, 4, 5, 6, 7, 8};
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.SPARSE)) {
+            channel.write(ByteBuffer.wrap(marker), REGION_SIZE - 4);
+            channel.write(ByteBuffer.wrap(new byte[]{9}), REGION_SIZE + 8191);
+        }
+
+        MappedVideoFile mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = MappedVideoFile.map(channel);
+        }
+        assertThat(mapped.size()).isEqualTo(REGION_SIZE + 8192);
+
+        assertThat(mapped.slice(REGION_SIZE - 4, 8).toByteArray()).isEqualTo(marker);
+        // A rope over a view of each mapping, large enough that concat() does not flatten it into a copy
+        ByteString straddling = mapped.slice(REGION_SIZE - 4096, 8192);
+        assertThat(straddling.asReadOnlyByteBufferList()).hasSize(2).allMatch(ByteBuffer::isDirect);
+        assertThat(straddling.substring(4092, 4100).toByteArray()).isEqualTo(marker);
+        assertThat(mapped.slice(REGION_SIZE + 8191, 1).byteAt(0)).isEqualTo((byte) 9);
+        assertThatThrownBy(() -> mapped.slice(REGION_SIZE + 8188, 8)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+}
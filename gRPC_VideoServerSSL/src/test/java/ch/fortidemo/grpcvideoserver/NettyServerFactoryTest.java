@@ -0,0 +1,43 @@
+package ch.fortidemo.grpcvideoserver;
+
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NettyServerFactoryTest {
+
+    private final GrpcServerProperties properties = new GrpcServerProperties();
+    private final NettyServerFactory factory = new NettyServerFactory(properties, new SimpleMeterRegistry());
+
+    @AfterEach
+    void tearDown() {
+        factory.shutdown();
+    }
+
+    @Test
+    void autoTunedWindowStartsAtTheConfiguredSizeAndMayGrow() {
+        properties.setFlowControlWindow(DataSize.ofMegabytes(4));
+        properties.setFlowControlAutoTune(true);
+
+        NettyServerBuilder builder = factory.newServerBuilder();
+
+        // The builder keeps no getters for these, so the fields are read directly
+        assertThat(builder).extracting("autoFlowControl").isEqualTo(true);
+        assertThat(builder).extracting("flowControlWindow").isEqualTo(4 * 1024 * 1024);
+    }
+
+    @Test
+    void fixedWindowStaysAtTheConfiguredSize() {
+        properties.setFlowControlWindow(DataSize.ofMegabytes(4));
+        properties.setFlowControlAutoTune(false);
+
+        NettyServerBuilder builder = factory.newServerBuilder();
+
+        assertThat(builder).extracting("autoFlowControl").isEqualTo(false);
+        assertThat(builder).extracting("flowControlWindow").isEqualTo(4 * 1024 * 1024);
+    }
+}
@@ -0,0 +1,177 @@
+package ch.fortidemo.grpcvideoserver;
+
+import io.grpc.netty.shaded.io.grpc.netty.GrpcSslContexts;
+import io.grpc.netty.shaded.io.netty.buffer.ByteBufAllocator;
+import io.grpc.netty.shaded.io.netty.handler.ssl.OpenSslSessionContext;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslContext;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslContextBuilder;
+import io.grpc.netty.shaded.io.netty.handler.ssl.SslProvider;
+import io.grpc.netty.shaded.io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.grpc.netty.shaded.io.netty.handler.ssl.util.SelfSignedCertificate;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TlsContextFactoryTest {
+
+    private static SelfSignedCertificate certificate;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void createCertificate() throws Exception {
+        certificate = new SelfSignedCertificate("localhost");
+    }
+
+    @AfterAll
+    static void deleteCertificate() {
+        certificate.delete();
+    }
+
+    @Test
+    void prefersOpenSslWithTls13AndResumesSessions() throws Exception {
+        SslContext server = serverContext(new TlsProperties());
+        assertThat(server.sessionContext()).isInstanceOf(OpenSslSessionContext.class);
+
+        // The JDK client caches sessions per host and port, the shaded OpenSSL client does not
+        SslContext client = GrpcSslContexts.configure(SslContextBuilder.forClient(), SslProvider.JDK)
+                .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                .build();
+
+        SSLEngine first = client.newEngine(ByteBufAllocator.DEFAULT, "localhost", 9090);
+        long fullHandshake = handshake(first, server.newEngine(ByteBufAllocator.DEFAULT));
+        assertThat(first.getSession().getProtocol()).isEqualTo("TLSv1.3");
+
+        // A resumed handshake skips the certificate, so the server sends a fraction of the bytes
+        long resumedHandshake = handshake(client.newEngine(ByteBufAllocator.DEFAULT, "localhost", 9090),
+                server.newEngine(ByteBufAllocator.DEFAULT));
+        assertThat(resumedHandshake).isLessThan(fullHandshake / 2);
+    }
+
+    @Test
+    void jdkProviderKeepsTheConfiguredProtocols() throws Exception {
+        TlsProperties properties = new TlsProperties();
+        properties.setProvider(TlsProperties.Provider.JDK);
+        SslContext server = serverContext(properties);
+
+        SslContext client = GrpcSslContexts.configure(SslContextBuilder.forClient(), SslProvider.JDK)
+                .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                .protocols("TLSv1.2")
+                .build();
+        SSLEngine engine = client.newEngine(ByteBufAllocator.DEFAULT, "localhost", 9090);
+        handshake(engine, server.newEngine(ByteBufAllocator.DEFAULT));
+
+        assertThat(engine.getSession().getProtocol()).isEqualTo("TLSv1.2");
+    }
+
+    @Test
+    void newHandshakesSeeReloadedCertificates() throws Exception {
+        SelfSignedCertificate rotated = new SelfSignedCertificate("rotated.example");
+        Path chain = tempDir.resolve("server.crt");
+        Path key = tempDir.resolve("server.key");
+        Files.copy(certificate.certificate().toPath(), chain);
+        Files.copy(certificate.privateKey().toPath(), key);
+        CertificateReloader reloader = new CertificateReloader(chain, key, null);
+        reloader.start();
+        try {
+            SslContext server = new TlsContextFactory(new TlsProperties()).build(reloader);
+            SslContext client = GrpcSslContexts.configure(SslContextBuilder.forClient(), SslProvider.JDK)
+                    .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                    .build();
+
+            SSLEngine before = client.newEngine(ByteBufAllocator.DEFAULT);
+            handshake(before, server.newEngine(ByteBufAllocator.DEFAULT));
+            assertThat(before.getSession().getPeerCertificates()[0]).isEqualTo(certificate.cert());
+
+            Files.copy(rotated.certificate().toPath(), chain, StandardCopyOption.REPLACE_EXISTING);
+            Files.copy(rotated.privateKey().toPath(), key, StandardCopyOption.REPLACE_EXISTING);
+            reloader.reload();
+
+            SSLEngine after = client.newEngine(ByteBufAllocator.DEFAULT);
+            handshake(after, server.newEngine(ByteBufAllocator.DEFAULT));
+            assertThat(after.getSession().getPeerCertificates()[0]).isEqualTo(rotated.cert());
+        } finally {
+            reloader.stop();
+            rotated.delete();
+        }
+    }
+
+    @Test
+    void readsTicketKeysInBlocksOf48Bytes() throws Exception {
+        Path keys = tempDir.resolve("ticket.key");
+        Files.write(keys, new byte[96]);
+        assertThat(TlsContextFactory.readTicketKeys(keys)).hasSize(2);
+
+        Files.write(keys, new byte[50]);
+        assertThatThrownBy(() -> TlsContextFactory.readTicketKeys(keys)).isInstanceOf(IOException.class);
+    }
+
+    private static SslContext serverContext(TlsProperties properties) throws IOException {
+        try (InputStream cert = new FileInputStream(certificate.certificate());
+             InputStream key = new FileInputStream(certificate.privateKey())) {
+            return new TlsContextFactory(properties).build(cert, key, null);
+        }
+    }
+
+    // Shuttles TLS records between two engines in memory until the handshake is done, then sends one record each
+    // way: BoringSSL only flushes the TLS 1.3 session tickets with the first application data. Returns the
+    // handshake bytes sent by the server.
+    private static long handshake(SSLEngine client, SSLEngine server) throws Exception {
+        ByteBuffer toServer = ByteBuffer.allocate(64 * 1024);
+        ByteBuffer toClient = ByteBuffer.allocate(64 * 1024);
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        ByteBuffer application = ByteBuffer.allocate(64 * 1024);
+        client.beginHandshake();
+        server.beginHandshake();
+
+        long serverBytes = 0;
+        for (int i = 0; i < 100; i++) {
+            client.wrap(empty, toServer);
+            serverBytes += server.wrap(empty, toClient).bytesProduced();
+            toServer.flip();
+            server.unwrap(toServer, application);
+            toServer.compact();
+            toClient.flip();
+            client.unwrap(toClient, application);
+            toClient.compact();
+            runTasks(client);
+            runTasks(server);
+            if (client.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING
+                    && server.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING
+                    && toServer.position() == 0 && toClient.position() == 0) {
+                server.wrap(ByteBuffer.wrap(new byte[16]), toClient);
+                toClient.flip();
+                while (toClient.hasRemaining() && client.unwrap(toClient, application).bytesConsumed() > 0) {
+                    application.clear();
+                }
+                client.wrap(ByteBuffer.wrap(new byte[16]), toServer);
+                toServer.flip();
+                server.unwrap(toServer, application);
+                return serverBytes;
+            }
+        }
+        throw new AssertionError("Handshake did not finish");
+    }
+
+    private static void runTasks(SSLEngine engine) {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,512 @@
+package ch.fortidemo.grpcvideoserver;
+
+import ch.fortidemo.grpc.video.ListVideosRequest;
+import ch.fortidemo.grpc.video.VideoChunk;
+import ch.fortidemo.grpc.video.VideoInfo;
+import ch.fortidemo.grpc.video.VideoRequest;
+import ch.fortidemo.grpc.video.VideoServiceGrpc;
+import com.google.protobuf.ByteString;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ForwardingServerCall;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32C;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+import static org.assertj.core.api.Assertions.tuple;
+
+class VideoServiceImplTest {
+
+    private static final int FILE_SIZE = 2 * 1024 * 1024;
+
+    @TempDir
+    Path videoDir;
+
+    private Server server;
+    private ManagedChannel channel;
+    private VideoCatalog catalog;
+    private final StreamMetrics metrics = new StreamMetrics(true, false, 1000);
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (catalog != null) {
+            catalog.stop();
+        }
+        if (channel != null) {
+            channel.shutdownNow();
+        }
+        if (server != null) {
+            server.shutdownNow();
+        }
+    }
+
+    @Test
+    void slowClientKeepsServerSideBufferingBounded() throws Exception {
+        byte[] content = new byte[FILE_SIZE];
+        new Random(42).nextBytes(content);
+        Files.write(videoDir.resolve("video.mp4"), content);
+
+        AtomicInteger sent = new AtomicInteger();
+        ServerInterceptor countSentMessages = new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> io.grpc.ServerCall.Listener<ReqT> interceptCall(
+                    io.grpc.ServerCall<ReqT, RespT> call, io.grpc.Metadata headers, io.grpc.ServerCallHandler<ReqT, RespT> next) {
+                return next.startCall(new ForwardingServerCall.SimpleForwardingServerCall<>(call) {
+                    @Override
+                    public void sendMessage(RespT message) {
+                        sent.incrementAndGet();
+                        super.sendMessage(message);
+                    }
+                }, headers);
+            }
+        };
+
+        VideoServiceImpl service = newService(new SegmentCache(0));
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+                .addService(ServerInterceptors.intercept(service, countSentMessages))
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).build();
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        AtomicInteger receivedChunks = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        // Deliberately slow client: asks for one chunk at a time and dawdles before the next
+        VideoServiceGrpc.newStub(channel).streamVideo(VideoRequest.newBuilder().setFilename("video.mp4").build(),
+                new ClientResponseObserver<VideoRequest, VideoChunk>() {
+                    private ClientCallStreamObserver<VideoRequest> requestStream;
+
+                    @Override
+                    public void beforeStart(ClientCallStreamObserver<VideoRequest> requestStream) {
+                        this.requestStream = requestStream;
+                        requestStream.disableAutoRequestWithInitial(1);
+                    }
+
+                    @Override
+                    public void onNext(VideoChunk chunk) {
+                        received.writeBytes(chunk.getData().toByteArray());
+                        int inFlight = sent.get() - receivedChunks.incrementAndGet();
+                        maxInFlight.accumulateAndGet(inFlight, Math::max);
+                        try {
+                            Thread.sleep(2);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        requestStream.request(1);
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        error.set(t);
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        done.countDown();
+                    }
+                });
+
+        assertThat(done.await(60, TimeUnit.SECONDS)).isTrue();
+        assertThat(error.get()).isNull();
+        assertThat(received.toByteArray()).isEqualTo(content);
+        // Without backpressure the server would have queued every chunk of the file up front
+        assertThat(maxInFlight.get()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void closesTheCallWithAStatusWhenStreamingFails() throws Exception {
+        Files.write(videoDir.resolve("video.mp4"), new byte[FILE_SIZE]);
+        AtomicInteger loads = new AtomicInteger();
+        // The third segment blows up with an unchecked exception, as a truncated mapping would
+        SegmentCache failing = new SegmentCache(0) {
+            @Override
+            public ByteString get(SegmentKey key, SegmentLoader loader) throws IOException {
+                if (loads.incrementAndGet() == 3) {
+                    throw new IllegalStateException("segment loader failed");
+                }
+                return super.get(key, loader);
+            }
+        };
+        startServer(newService(failing));
+        VideoServiceGrpc.VideoServiceBlockingStub stub = VideoServiceGrpc.newBlockingStub(channel)
+                .withDeadlineAfter(10, TimeUnit.SECONDS);
+
+        StatusRuntimeException failed = catchThrowableOfType(() -> stub
+                .streamVideo(VideoRequest.newBuilder().setFilename("video.mp4").build())
+                .forEachRemaining(chunk -> { }), StatusRuntimeException.class);
+        // Not UNKNOWN from a raw exception, and not a hung call that only the deadline ends
+        assertThat(failed.getStatus().getCode()).isEqualTo(Status.Code.INTERNAL);
+        assertThat(failed.getStatus().getDescription()).contains("video.mp4");
+
+        // The failed call was cleaned up, the file is still served
+        assertThat(stub.streamVideo(VideoRequest.newBuilder().setFilename("video.mp4").setOffset(FILE_SIZE).build())
+                .next().getHeader().getTotalSize()).isEqualTo(FILE_SIZE);
+    }
+
+    @Test
+    void servesOnlyTheRequestedByteRange() throws Exception {
+        byte[] content = new byte[FILE_SIZE];
+        new Random(7).nextBytes(content);
+        Files.write(videoDir.resolve("video.mp4"), content);
+        startServer(newService(new SegmentCache(1024 * 1024)));
+
+        // Unaligned on both ends so the first and last chunk are cut out of cached segments
+        long offset = 100_003;
+        long length = 700_001;
+        Iterator<VideoChunk> chunks = VideoServiceGrpc.newBlockingStub(channel).streamVideo(VideoRequest.newBuilder()
+                .setFilename("video.mp4")
+                .setOffset(offset)
+                .setLength(length)
+                .build());
+
+        VideoChunk first = chunks.next();
+        assertThat(first.getHeader().getTotalSize()).isEqualTo(FILE_SIZE);
+        assertThat(first.getHeader().getOffset()).isEqualTo(offset);
+        assertThat(first.getHeader().getLength()).isEqualTo(length);
+        assertThat(first.getOffset()).isEqualTo(offset);
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        received.writeBytes(first.getData().toByteArray());
+        while (chunks.hasNext()) {
+            VideoChunk chunk = chunks.next();
+            assertThat(chunk.getOffset()).isEqualTo(offset + received.size());
+            assertThat(chunk.hasHeader()).isFalse();
+            received.writeBytes(chunk.getData().toByteArray());
+        }
+        assertThat(received.toByteArray()).isEqualTo(Arrays.copyOfRange(content, (int) offset, (int) (offset + length)));
+        assertThat(metrics.getBytes()).isEqualTo(length);
+        assertThat(metrics.getStreams()).isEqualTo(1);
+
+        StatusRuntimeException outOfRange = catchThrowableOfType(() -> VideoServiceGrpc.newBlockingStub(channel)
+                .streamVideo(VideoRequest.newBuilder().setFilename("video.mp4").setOffset(FILE_SIZE + 1).build())
+                .hasNext(), StatusRuntimeException.class);
+        assertThat(outOfRange.getStatus().getCode()).isEqualTo(Status.Code.OUT_OF_RANGE);
+    }
+
+    @Test
+    void streamsThroughTheCopyFallbackWithoutMappedIo() throws Exception {
+        byte[] content = new byte[FILE_SIZE + 1234];
+        new Random(13).nextBytes(content);
+        Files.write(videoDir.resolve("video.mp4"), content);
+        VideoConfig config = new VideoConfig();
+        config.setMappedIo(false);
+        catalog = new VideoCatalog(videoDir.toString());
+        catalog.start();
+        startServer(new VideoServiceImpl("video.mp4", config, new SegmentCache(0), catalog, metrics,
+                new ResponseCompression(config), new BandwidthShaper(config, new SimpleMeterRegistry())));
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        VideoServiceGrpc.newBlockingStub(channel)
+                .streamVideo(VideoRequest.newBuilder().setFilename("video.mp4").build())
+                .forEachRemaining(chunk -> {
+                    // Heap copies the message owns, never views of a mapping
+                    assertThat(chunk.getData().asReadOnlyByteBufferList()).noneMatch(ByteBuffer::isDirect);
+                    received.writeBytes(chunk.getData().toByteArray());
+                });
+        assertThat(received.toByteArray()).isEqualTo(content);
+    }
+
+    @Test
+    void resumesARangeOnlyWhileTheFileIsUnchanged() throws Exception {
+        Files.write(videoDir.resolve("video.mp4"), new byte[1000]);
+        startServer(newService(new SegmentCache(0)));
+        VideoServiceGrpc.VideoServiceBlockingStub stub = VideoServiceGrpc.newBlockingStub(channel);
+        String etag = stub.listVideos(ListVideosRequest.getDefaultInstance()).getVideos(0).getEtag();
+        assertThat(etag).isNotEmpty();
+
+        VideoChunk current = stub.streamVideo(VideoRequest.newBuilder()
+                .setFilename("video.mp4").setOffset(600).setIfRange(etag).build()).next();
+        assertThat(current.getHeader().getEtag()).isEqualTo(etag);
+        assertThat(current.getHeader().getOffset()).isEqualTo(600);
+        assertThat(current.getHeader().getLength()).isEqualTo(400);
+
+        // A copy of another version gets the whole file, whatever range it asked for
+        VideoChunk stale = stub.streamVideo(VideoRequest.newBuilder()
+                .setFilename("video.mp4").setOffset(600).setLength(10).setIfRange("3e8-0").build()).next();
+        assertThat(stale.getHeader().getOffset()).isZero();
+        assertThat(stale.getHeader().getLength()).isEqualTo(1000);
+        assertThat(stale.getOffset()).isZero();
+    }
+
+    @Test
+    void checksumsEveryChunkAndHashesTheFileOnlyOnce() throws Exception {
+        byte[] content = new byte[FILE_SIZE];
+        new Random(11).nextBytes(content);
+        Files.write(videoDir.resolve("video.mp4"), content);
+        startServer(newService(new SegmentCache(1024 * 1024)));
+        VideoServiceGrpc.VideoServiceBlockingStub stub = VideoServiceGrpc.newBlockingStub(channel);
+        byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(content);
+
+        // A range before anyone streamed the whole file: chunk checksums, but no digest to hand out yet
+        List<VideoChunk> range = new ArrayList<>();
+        stub.streamVideo(VideoRequest.newBuilder().setFilename("video.mp4").setOffset(1000).setChecksums(true).build())
+                .forEachRemaining(range::add);
+        assertThat(range).allSatisfy(chunk -> assertThat(chunk.getCrc32C()).isEqualTo(crc32c(chunk)));
+        assertThat(range.get(range.size() - 1).getFileSha256().isEmpty()).isTrue();
+
+        List<VideoChunk> whole = new ArrayList<>();
+        stub.streamVideo(VideoRequest.newBuilder().setFilename("video.mp4").setChecksums(true).build())
+                .forEachRemaining(whole::add);
+        assertThat(whole).allSatisfy(chunk -> assertThat(chunk.getCrc32C()).isEqualTo(crc32c(chunk)));
+        assertThat(whole.get(whole.size() - 1).getFileSha256().toByteArray()).isEqualTo(sha256);
+        assertThat(catalog.find("video.mp4").getSha256()).isEqualTo(sha256);
+
+        // From now on even a range gets the cached digest
+        Iterator<VideoChunk> tail = stub.streamVideo(VideoRequest.newBuilder()
+                .setFilename("video.mp4").setOffset(FILE_SIZE).setChecksums(true).build());
+        assertThat(tail.next().getFileSha256().toByteArray()).isEqualTo(sha256);
+
+        VideoChunk unchecked = stub.streamVideo(VideoRequest.newBuilder().setFilename("video.mp4").build()).next();
+        assertThat(unchecked.hasCrc32C()).isFalse();
+    }
+
+    @Test
+    void sendsTheMoovBoxAheadOfTheMediaDataOnRequest() throws Exception {
+        // ftyp, 300 KB of samples, then the moov, as a recorder that does not write fast-start MP4s leaves them
+        ByteArrayOutputStream mp4 = new ByteArrayOutputStream();
+        mp4.writeBytes(box("ftyp", 24));
+        mp4.writeBytes(box("mdat", 300_000));
+        mp4.writeBytes(box("moov", 50_000));
+        byte[] content = mp4.toByteArray();
+        Files.write(videoDir.resolve("video.mp4"), content);
+        startServer(newService(new SegmentCache(0)));
+
+        List<VideoChunk> chunks = new ArrayList<>();
+        VideoServiceGrpc.newBlockingStub(channel)
+                .streamVideo(VideoRequest.newBuilder().setFilename("video.mp4").setMoovFirst(true).build())
+                .forEachRemaining(chunks::add);
+
+        // The ftyp, then straight to the moov, then the samples
+        assertThat(chunks.get(0).getOffset()).isZero();
+        assertThat(chunks.get(0).getData().size()).isEqualTo(24);
+        assertThat(chunks.get(1).getOffset()).isEqualTo(300_024);
+        byte[] reassembled = new byte[content.length];
+        for (VideoChunk chunk : chunks) {
+            chunk.getData().copyTo(reassembled, (int) chunk.getOffset());
+        }
+        assertThat(reassembled).isEqualTo(content);
+
+        // Without asking, the file comes in order
+        long offset = 0;
+        Iterator<VideoChunk> inOrder = VideoServiceGrpc.newBlockingStub(channel)
+                .streamVideo(VideoRequest.newBuilder().setFilename("video.mp4").build());
+        while (inOrder.hasNext()) {
+            VideoChunk chunk = inOrder.next();
+            assertThat(chunk.getOffset()).isEqualTo(offset);
+            offset += chunk.getData().size();
+        }
+        assertThat(offset).isEqualTo(content.length);
+    }
+
+    @Test
+    void hashesAFileSentMoovFirstInFileOrder() throws Exception {
+        ByteArrayOutputStream mp4 = new ByteArrayOutputStream();
+        mp4.writeBytes(box("ftyp", 24));
+        mp4.writeBytes(box("mdat", 300_000));
+        mp4.writeBytes(box("moov", 50_000));
+        byte[] content = mp4.toByteArray();
+        Files.write(videoDir.resolve("video.mp4"), content);
+        startServer(newService(new SegmentCache(0)));
+
+        List<VideoChunk> chunks = new ArrayList<>();
+        VideoServiceGrpc.newBlockingStub(channel)
+                .streamVideo(VideoRequest.newBuilder().setFilename("video.mp4").setMoovFirst(true).setChecksums(true).build())
+                .forEachRemaining(chunks::add);
+
+        // Sent out of order, the digest is still the one of the file
+        byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(content);
+        assertThat(chunks.get(1).getOffset()).isEqualTo(300_024);
+        assertThat(chunks).allSatisfy(chunk -> assertThat(chunk.getCrc32C()).isEqualTo(crc32c(chunk)));
+        assertThat(chunks.get(chunks.size() - 1).getFileSha256().toByteArray()).isEqualTo(sha256);
+        assertThat(catalog.find("video.mp4").getSha256()).isEqualTo(sha256);
+    }
+
+    @Test
+    void catalogPicksUpNewFilesWithoutRestart() throws Exception {
+        Files.write(videoDir.resolve("video.mp4"), new byte[1000]);
+        startServer(newService(new SegmentCache(0)));
+        VideoServiceGrpc.VideoServiceBlockingStub stub = VideoServiceGrpc.newBlockingStub(channel);
+
+        assertThat(stub.listVideos(ListVideosRequest.getDefaultInstance()).getVideosList())
+                .extracting(VideoInfo::getName, VideoInfo::getSize)
+                .containsExactly(tuple("video.mp4", 1000L));
+
+        Files.write(videoDir.resolve("second.mp4"), new byte[2000]);
+        long deadline = System.currentTimeMillis() + 10_000;
+        // The watcher may index the file while it is still being written, wait for the final size
+        while ((catalog.find("second.mp4") == null || catalog.find("second.mp4").getSize() != 2000)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        Iterator<VideoChunk> chunks = stub.streamVideo(VideoRequest.newBuilder().setFilename("second.mp4").build());
+        assertThat(chunks.next().getHeader().getTotalSize()).isEqualTo(2000);
+
+        StatusRuntimeException notFound = catchThrowableOfType(() -> stub
+                .streamVideo(VideoRequest.newBuilder().setFilename("../etc/passwd").build())
+                .hasNext(), StatusRuntimeException.class);
+        assertThat(notFound.getStatus().getCode()).isEqualTo(Status.Code.NOT_FOUND);
+    }
+
+    @Test
+    void streamsOnAVirtualThreadExecutor() throws Exception {
+        byte[] content = new byte[FILE_SIZE];
+        new Random(3).nextBytes(content);
+        Files.write(videoDir.resolve("video.mp4"), content);
+
+        AtomicReference<Boolean> virtual = new AtomicReference<>();
+        ServerInterceptor recordThread = new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> io.grpc.ServerCall.Listener<ReqT> interceptCall(
+                    io.grpc.ServerCall<ReqT, RespT> call, io.grpc.Metadata headers, io.grpc.ServerCallHandler<ReqT, RespT> next) {
+                virtual.set(Thread.currentThread().isVirtual());
+                return next.startCall(call, headers);
+            }
+        };
+
+        // Same executor GrpcServer installs for grpc.server.executor=virtual
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+                .executor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().factory()))
+                .addService(ServerInterceptors.intercept(newService(new SegmentCache(0)), recordThread))
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).build();
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        VideoServiceGrpc.newBlockingStub(channel)
+                .streamVideo(VideoRequest.newBuilder().setFilename("video.mp4").build())
+                .forEachRemaining(chunk -> received.writeBytes(chunk.getData().toByteArray()));
+
+        assertThat(received.toByteArray()).isEqualTo(content);
+        assertThat(virtual.get()).isTrue();
+    }
+
+    @Test
+    void compressesTextLikeResponsesButNotVideo() throws Exception {
+        Files.write(videoDir.resolve("video.mp4"), new byte[100_000]);
+        Files.writeString(videoDir.resolve("subtitles.vtt"), "WEBVTT\n\n00:00.000 --> 00:02.000\nHello\n\n".repeat(2000));
+        catalog = new VideoCatalog(videoDir.toString());
+        catalog.start();
+        VideoConfig config = new VideoConfig();
+        config.setCompressionMinSize(DataSize.ofBytes(0));
+        ResponseCompression compression = new ResponseCompression(config);
+
+        // Over a real transport, the in-process one never compresses
+        server = NettyServerBuilder.forAddress(new InetSocketAddress("127.0.0.1", 0))
+                .addService(new VideoServiceImpl("video.mp4", config, new SegmentCache(0), catalog, metrics, compression,
+                        new BandwidthShaper(config, new SimpleMeterRegistry())))
+                .compressorRegistry(compression.getCompressorRegistry())
+                .build()
+                .start();
+        Metadata.Key<String> encodingKey = Metadata.Key.of("grpc-encoding", Metadata.ASCII_STRING_MARSHALLER);
+        AtomicReference<String> encoding = new AtomicReference<>();
+        channel = NettyChannelBuilder.forAddress("127.0.0.1", server.getPort())
+                .usePlaintext()
+                .intercept(new ClientInterceptor() {
+                    @Override
+                    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+                            MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+                        return new ForwardingClientCall.SimpleForwardingClientCall<>(next.newCall(method, callOptions)) {
+                            @Override
+                            public void start(Listener<RespT> listener, Metadata headers) {
+                                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(listener) {
+                                    @Override
+                                    public void onHeaders(Metadata headers) {
+                                        encoding.set(headers.get(encodingKey));
+                                        super.onHeaders(headers);
+                                    }
+                                }, headers);
+                            }
+                        };
+                    }
+                })
+                .build();
+        VideoServiceGrpc.VideoServiceBlockingStub stub = VideoServiceGrpc.newBlockingStub(channel);
+
+        stub.streamVideo(VideoRequest.newBuilder().setFilename("subtitles.vtt").build()).forEachRemaining(chunk -> { });
+        assertThat(encoding.get()).isEqualTo("gzip");
+
+        stub.streamVideo(VideoRequest.newBuilder().setFilename("video.mp4").build()).forEachRemaining(chunk -> { });
+        assertThat(encoding.get()).isNotEqualTo("gzip");
+
+        assertThat(stub.listVideos(ListVideosRequest.getDefaultInstance()).getVideosCount()).isEqualTo(2);
+        assertThat(encoding.get()).isEqualTo("gzip");
+    }
+
+    private static byte[] box(String type, int size) {
+        byte[] box = new byte[size];
+        new Random(size).nextBytes(box);
+        ByteBuffer.wrap(box).putInt(size).put(type.getBytes(StandardCharsets.US_ASCII));
+        return box;
+    }
+
+    private static int crc32c(VideoChunk chunk) {
+        CRC32C crc = new CRC32C();
+        crc.update(chunk.getData().asReadOnlyByteBuffer());
+        return (int) crc.getValue();
+    }
+
+    private VideoServiceImpl newService(SegmentCache segmentCache) {
+        catalog = new VideoCatalog(videoDir.toString());
+        catalog.start();
+        return new VideoServiceImpl("video.mp4", new VideoConfig(), segmentCache, catalog, metrics,
+                new ResponseCompression(new VideoConfig()), new BandwidthShaper(new VideoConfig(), new SimpleMeterRegistry()));
+    }
+
+    private void startServer(VideoServiceImpl service) throws Exception {
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+                .addService(service)
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).build();
+    }
+}
\ No newline at end of file